@@ -0,0 +1,49 @@
+package io.apitoolkit.springboot.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.apitoolkit.springboot.APErrors;
+
+/**
+ * Reporting the same exception over and over, as during an incident.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BuildErrorBenchmark {
+
+    @Param({ "20", "120" })
+    public int stackDepth;
+
+    private Throwable error;
+
+    @Setup
+    public void setup() {
+        this.error = new RuntimeException("request failed", fail(this.stackDepth));
+    }
+
+    private static IllegalStateException fail(int depth) {
+        return depth == 0 ? new IllegalStateException("connection reset") : fail(depth - 1);
+    }
+
+    @Benchmark
+    public Map<String, Object> buildError() {
+        return APErrors.buildError(this.error);
+    }
+}
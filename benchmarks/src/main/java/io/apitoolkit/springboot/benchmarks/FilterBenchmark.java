@@ -0,0 +1,108 @@
+package io.apitoolkit.springboot.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import io.apitoolkit.springboot.APIToolkitFilter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+
+/**
+ * One request through APIToolkitFilter.doFilter with mock servlet objects.
+ * No OpenTelemetry SDK is registered, so spans are no-ops and the numbers
+ * are the SDK's own cost. {@code bare} runs the same request without the
+ * filter, the difference between the two is the per-request overhead.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterBenchmark {
+
+    @Param({ "1024" })
+    public int bodySize;
+
+    private APIToolkitFilter filter;
+    private byte[] requestBody;
+    private byte[] responseBody;
+    private FilterChain chain;
+
+    @Setup
+    public void setup() throws ServletException {
+        MockFilterConfig config = new MockFilterConfig("APIToolkitFilter");
+        config.addInitParameter("apitoolkit.debug", "false");
+        config.addInitParameter("apitoolkit.serviceName", "benchmark");
+        config.addInitParameter("apitoolkit.captureRequestBody", "true");
+        config.addInitParameter("apitoolkit.captureResponseBody", "true");
+        config.addInitParameter("apitoolkit.redactHeaders", "authorization,cookie");
+        config.addInitParameter("apitoolkit.redactRequestBody", "$[*].password");
+        config.addInitParameter("apitoolkit.redactResponseBody", "$[*].password");
+        this.filter = new APIToolkitFilter();
+        this.filter.init(config);
+
+        this.requestBody = Payloads.json(this.bodySize);
+        this.responseBody = Payloads.json(this.bodySize);
+        // Reads the request and writes a JSON response, like a small controller.
+        this.chain = (req, res) -> {
+            byte[] buffer = new byte[4096];
+            while (req.getInputStream().read(buffer) != -1) {
+                // drain
+            }
+            res.setContentType("application/json");
+            res.getOutputStream().write(this.responseBody);
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.filter.destroy();
+    }
+
+    private MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/users/42");
+        request.setQueryString("page=2&sort=name");
+        request.addParameter("page", "2");
+        request.addParameter("sort", "name");
+        request.addHeader("Content-Type", "application/json");
+        request.addHeader("Accept", "application/json");
+        request.addHeader("Authorization", "Bearer token");
+        request.addHeader("User-Agent", "benchmark/1.0");
+        request.setContentType("application/json");
+        request.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        request.setContent(this.requestBody);
+        return request;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse bare() throws IOException, ServletException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        this.chain.doFilter(request(), response);
+        return response;
+    }
+
+    @Benchmark
+    public MockHttpServletResponse doFilter() throws IOException, ServletException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        this.filter.doFilter(request(), response, this.chain);
+        return response;
+    }
+}
@@ -0,0 +1,33 @@
+package io.apitoolkit.springboot.benchmarks;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.apitoolkit.springboot.Utils;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathParamsBenchmark {
+
+    private final String pattern = "/api/v1/users/{userId}/orders/{orderId}/items/{itemId}";
+    private final String path = "/api/v1/users/1234/orders/5678/items/91011";
+
+    @Benchmark
+    public HashMap<String, String> getPathParamsFromPattern() {
+        return Utils.getPathParamsFromPattern(this.pattern, this.path);
+    }
+}
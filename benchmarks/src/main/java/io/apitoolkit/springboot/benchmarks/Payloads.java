@@ -0,0 +1,59 @@
+package io.apitoolkit.springboot.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request data shared by the benchmarks, deterministic so runs compare.
+ */
+public final class Payloads {
+
+    private Payloads() {
+    }
+
+    /**
+     * JSON array of user objects, roughly {@code size} bytes.
+     */
+    public static byte[] json(int size) {
+        StringBuilder body = new StringBuilder(size + 128).append('[');
+        for (int i = 0; body.length() < size; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append("{\"id\":").append(i)
+                    .append(",\"email\":\"user").append(i).append("@example.com\"")
+                    .append(",\"password\":\"secret").append(i).append('"')
+                    .append(",\"profile\":{\"name\":\"User ").append(i).append("\",\"age\":").append(20 + i % 50)
+                    .append(",\"tags\":[\"a\",\"b\"]}}");
+        }
+        return body.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * {@code count} JsonPaths into {@link #json}, either matching its fields
+     * or naming fields it does not have.
+     */
+    public static List<String> paths(int count, boolean match) {
+        String[] matching = { "$[*].password", "$[*].email", "$[*].profile.name", "$[*].profile.age",
+                "$[*].profile.tags", "$[*].id", "$[0].password", "$[1].email" };
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            paths.add(match ? matching[i % matching.length] : "$[*].missing" + i);
+        }
+        return paths;
+    }
+
+    static Map<String, String> headers(int count) {
+        String[] common = { "Content-Type", "Accept", "User-Agent", "Authorization", "Accept-Encoding",
+                "Accept-Language", "Cache-Control", "Connection", "Host", "Cookie" };
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = i < common.length ? common[i] : "X-Custom-Header-" + i;
+            headers.put(name, "value-" + i + "-0123456789abcdef");
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,53 @@
+package io.apitoolkit.springboot.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.apitoolkit.springboot.RedactionPlan;
+import io.apitoolkit.springboot.Utils;
+
+/**
+ * Body redaction with a precompiled plan, as done for every captured body.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedactFieldsBenchmark {
+
+    @Param({ "1024", "65536" })
+    public int bodySize;
+
+    @Param({ "1", "8" })
+    public int pathCount;
+
+    @Param({ "true", "false" })
+    public boolean match;
+
+    private byte[] body;
+    private RedactionPlan plan;
+
+    @Setup
+    public void setup() {
+        this.body = Payloads.json(this.bodySize);
+        this.plan = RedactionPlan.compile(Payloads.paths(this.pathCount, this.match), false);
+    }
+
+    @Benchmark
+    public byte[] redactFields() {
+        return Utils.redactFields(this.body, this.plan, false);
+    }
+}
@@ -0,0 +1,76 @@
+package io.apitoolkit.springboot.benchmarks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.apitoolkit.springboot.CapturedBody;
+import io.apitoolkit.springboot.ExchangeConfig;
+import io.apitoolkit.springboot.RedactionPlan;
+import io.apitoolkit.springboot.Utils;
+import io.opentelemetry.api.trace.Span;
+
+/**
+ * Building the span attributes of one exchange against a no-op span, so
+ * only the SDK's own encoding work is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpanAttributesBenchmark {
+
+    @Param({ "8", "32" })
+    public int headerCount;
+
+    @Param({ "256", "16384" })
+    public int bodySize;
+
+    private Map<String, String> headers;
+    private Map<String, String> queryParams;
+    private Map<String, String> pathParams;
+    private CapturedBody body;
+    private List<Map<String, Object>> errors;
+    private ExchangeConfig config;
+
+    @Setup
+    public void setup() {
+        this.headers = Payloads.headers(this.headerCount);
+        this.queryParams = new HashMap<>();
+        this.queryParams.put("page", "2");
+        this.queryParams.put("sort", "name");
+        this.pathParams = Collections.singletonMap("id", "42");
+        this.body = CapturedBody.of(Payloads.json(this.bodySize), false);
+        this.errors = Collections.emptyList();
+        this.config = ExchangeConfig.builder("JavaSpringBoot")
+                .serviceVersion("1.0.0")
+                .tags("api,benchmark")
+                .redactHeaders(Collections.singletonList("authorization"))
+                .requestBodyRedaction(RedactionPlan.compile(Payloads.paths(1, true)))
+                .build();
+    }
+
+    @Benchmark
+    public void setApitoolkitAttributesAndEndSpan() {
+        Utils.setApitoolkitAttributesAndEndSpan(Span.getInvalid(), "api.example.com", 200, this.queryParams,
+                this.pathParams, this.headers, this.headers, "POST", "/users/42?page=2&sort=name",
+                "9b2f7c1e-6a0d-4c55-8f3e-2d1b0a9c8e7f", "/users/{id}", this.body, this.body, this.errors,
+                this.config, null, null);
+    }
+}
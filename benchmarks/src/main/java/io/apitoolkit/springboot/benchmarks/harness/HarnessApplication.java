@@ -0,0 +1,29 @@
+package io.apitoolkit.springboot.benchmarks.harness;
+
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Sample application driven by {@link LoadHarness}: one JSON endpoint that
+ * echoes the request body. Started with {@link InstrumentedConfiguration}
+ * as an extra source for the runs with the SDK.
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@Import(HarnessApplication.EchoController.class)
+public class HarnessApplication {
+
+    @RestController
+    public static class EchoController {
+
+        @PostMapping(value = "/orders/{id}", produces = "application/json")
+        public byte[] echo(@PathVariable("id") String id, @RequestBody byte[] body) {
+            return body;
+        }
+    }
+}
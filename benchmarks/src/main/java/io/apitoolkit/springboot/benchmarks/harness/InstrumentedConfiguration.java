@@ -0,0 +1,14 @@
+package io.apitoolkit.springboot.benchmarks.harness;
+
+import org.springframework.context.annotation.Configuration;
+
+import io.apitoolkit.springboot.annotations.EnableAPIToolkit;
+
+/**
+ * Adds the SDK to {@link HarnessApplication}. Kept out of that class, a
+ * nested configuration would be picked up by the baseline runs too.
+ */
+@Configuration
+@EnableAPIToolkit
+public class InstrumentedConfiguration {
+}
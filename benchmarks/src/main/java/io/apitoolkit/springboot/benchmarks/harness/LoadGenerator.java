@@ -0,0 +1,189 @@
+package io.apitoolkit.springboot.benchmarks.harness;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Closed-loop load: each worker sends a request, waits for the response and
+ * sends the next one. With a target rate the workers are paced and latency
+ * is measured from the time a request was due rather than from when it was
+ * actually sent, so a stalled server is not hidden (coordinated omission).
+ */
+final class LoadGenerator {
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final int concurrency;
+    private final double rate;
+
+    /**
+     * @param rate total requests per second across workers, 0 for as fast
+     *             as the server answers.
+     */
+    LoadGenerator(int concurrency, double rate) {
+        this.concurrency = concurrency;
+        this.rate = rate;
+    }
+
+    Result run(URI uri, byte[] body, long durationNanos) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer load-harness")
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        long intervalNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * concurrency / rate) : 0;
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            // Stagger paced workers so they do not all fire at once.
+            long first = start + (intervalNanos > 0 ? intervalNanos * i / concurrency : 0);
+            Worker worker = new Worker(i, request, first, intervalNanos, end);
+            worker.thread.start();
+            workers.add(worker);
+        }
+        long errors = 0;
+        int total = 0;
+        long allocated = 0;
+        for (Worker worker : workers) {
+            worker.thread.join();
+            errors += worker.errors;
+            total += worker.count;
+            allocated = allocated < 0 || worker.allocated < 0 ? -1 : allocated + worker.allocated;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] latencies = new long[total];
+        int offset = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+            offset += worker.count;
+        }
+        Arrays.sort(latencies);
+        return new Result(latencies, errors, elapsed, allocated);
+    }
+
+    // Bytes allocated so far by the calling thread, -1 when the JVM does not tell.
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads instanceof com.sun.management.ThreadMXBean
+                ? ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes()
+                : -1;
+    }
+
+    private final class Worker implements Runnable {
+        final Thread thread;
+        final HttpRequest request;
+        final long intervalNanos;
+        final long end;
+        long next;
+        long[] latencies = new long[4096];
+        int count;
+        long errors;
+        // Measured by the worker itself, its thread is gone once the harness
+        // samples the process.
+        long allocated;
+
+        Worker(int index, HttpRequest request, long first, long intervalNanos, long end) {
+            this.thread = new Thread(this, "load-generator-" + index);
+            this.request = request;
+            this.next = first;
+            this.intervalNanos = intervalNanos;
+            this.end = end;
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long start = allocatedBytes();
+            try {
+                send();
+            } finally {
+                long now = allocatedBytes();
+                allocated = start < 0 || now < 0 ? -1 : now - start;
+            }
+        }
+
+        private void send() {
+            while (true) {
+                long scheduled;
+                if (intervalNanos > 0) {
+                    scheduled = next;
+                    next += intervalNanos;
+                    long wait = scheduled - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                } else {
+                    scheduled = System.nanoTime();
+                }
+                if (scheduled - end >= 0) {
+                    return;
+                }
+                try {
+                    HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                    if (response.statusCode() >= 400) {
+                        errors++;
+                    }
+                } catch (Exception e) {
+                    errors++;
+                    if (e instanceof InterruptedException) {
+                        return;
+                    }
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = System.nanoTime() - scheduled;
+            }
+        }
+    }
+
+    static final class Result {
+        final long[] latencies;
+        final long errors;
+        final long elapsedNanos;
+        // Bytes allocated by the worker threads, -1 when unknown.
+        final long allocatedBytes;
+
+        Result(long[] latencies, long errors, long elapsedNanos, long allocatedBytes) {
+            this.latencies = latencies;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        int requests() {
+            return latencies.length;
+        }
+
+        double throughput() {
+            return latencies.length / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * Latency at the given percentile (0-100), in milliseconds.
+         */
+        double percentile(double percentile) {
+            if (latencies.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package io.apitoolkit.springboot.benchmarks.harness;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import io.apitoolkit.springboot.benchmarks.Payloads;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+
+/**
+ * End-to-end load test: starts {@link HarnessApplication} on a random port,
+ * once without the SDK and once per SDK configuration, drives it with
+ * {@link LoadGenerator} and reports latency percentiles, throughput, GC and
+ * allocation per request, and the OTLP bytes exported per request.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar io.apitoolkit.springboot.benchmarks.harness.LoadHarness \
+ *     --concurrency=16 --duration=30 --warmup=10 --bodySizes=1024,102400 --out=results/load.csv
+ * </pre>
+ *
+ * Spans go through the OpenTelemetry SDK's batch processor to
+ * {@link OtlpReceiver}, so export cost is part of the measurement. The load
+ * generator runs in the same JVM; allocation and GC numbers therefore
+ * include its share, which is the same in every scenario.
+ */
+public final class LoadHarness {
+
+    private static final String[] REDACT_PATHS = { "$[*].password", "$[*].email" };
+
+    private LoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "16"));
+        long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "30")));
+        long warmup = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("warmup", "10")));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "0"));
+        long collectorDelay = Long.parseLong(options.getOrDefault("collectorDelayMs", "0"));
+        String out = options.get("out");
+
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String size : options.getOrDefault("bodySizes", "1024,102400").split(",")) {
+            int bodySize = Integer.parseInt(size.trim());
+            scenarios.add(new Scenario("baseline", bodySize, false, false, false));
+            scenarios.add(new Scenario("sdk", bodySize, true, false, false));
+            scenarios.add(new Scenario("sdk+capture", bodySize, true, true, false));
+            scenarios.add(new Scenario("sdk+capture+redact", bodySize, true, true, true));
+        }
+
+        try (OtlpReceiver receiver = new OtlpReceiver(collectorDelay)) {
+            OpenTelemetrySdk otel = openTelemetry(receiver.endpoint());
+            LoadGenerator generator = new LoadGenerator(concurrency, rate);
+            // One discarded pass so the first scenario does not also pay for
+            // warming up Tomcat, Spring MVC and the HTTP client.
+            run(scenarios.get(0), generator, receiver, otel, warmup, warmup);
+            List<Row> rows = new ArrayList<>();
+            System.out.println(Row.HEADER);
+            for (Scenario scenario : scenarios) {
+                Row row = run(scenario, generator, receiver, otel, warmup, duration);
+                System.out.println(row.format());
+                rows.add(row);
+            }
+            otel.close();
+            if (out != null) {
+                write(Paths.get(out), rows);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static Row run(Scenario scenario, LoadGenerator generator, OtlpReceiver receiver,
+            OpenTelemetrySdk otel, long warmup, long duration) throws InterruptedException {
+        byte[] body = Payloads.json(scenario.bodySize);
+        try (ConfigurableApplicationContext app = start(scenario)) {
+            int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+            URI uri = URI.create("http://127.0.0.1:" + port + "/orders/42?expand=items&limit=10");
+
+            generator.run(uri, body, warmup);
+            otel.getSdkTracerProvider().forceFlush().join(30, TimeUnit.SECONDS);
+            System.gc();
+            receiver.reset();
+
+            Usage before = Usage.now();
+            LoadGenerator.Result result = generator.run(uri, body, duration);
+            otel.getSdkTracerProvider().forceFlush().join(30, TimeUnit.SECONDS);
+            Usage used = Usage.now().minus(before).plusAllocated(result.allocatedBytes);
+            return new Row(scenario, result, used, receiver.exports(), receiver.bytes());
+        }
+    }
+
+    private static ConfigurableApplicationContext start(Scenario scenario) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", "0");
+        properties.put("logging.level.root", "WARN");
+        properties.put("spring.jmx.enabled", "false");
+        properties.put("apitoolkit.serviceName", "load-harness");
+        properties.put("apitoolkit.captureRequest_body", String.valueOf(scenario.capture));
+        properties.put("apitoolkit.captureResponse_body", String.valueOf(scenario.capture));
+        if (scenario.redact) {
+            properties.put("apitoolkit.redactRequestBody", String.join(",", REDACT_PATHS));
+            properties.put("apitoolkit.redactResponseBody", String.join(",", REDACT_PATHS));
+        }
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(HarnessApplication.class)
+                .web(WebApplicationType.SERVLET)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .properties(properties);
+        if (scenario.instrumented) {
+            builder.sources(InstrumentedConfiguration.class);
+        }
+        return builder.run();
+    }
+
+    // Registered once: GlobalOpenTelemetry cannot be replaced between scenarios.
+    private static OpenTelemetrySdk openTelemetry(String endpoint) {
+        OtlpHttpSpanExporter exporter = OtlpHttpSpanExporter.builder()
+                .setEndpoint(endpoint)
+                .build();
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+                .setResource(Resource.getDefault().merge(Resource.create(
+                        Attributes.of(AttributeKey.stringKey("service.name"), "load-harness"))))
+                .addSpanProcessor(BatchSpanProcessor.builder(exporter).build())
+                .build();
+        return OpenTelemetrySdk.builder()
+                .setTracerProvider(tracerProvider)
+                .buildAndRegisterGlobal();
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    private static void write(Path path, List<Row> rows) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (PrintStream csv = new PrintStream(Files.newOutputStream(path), false, "UTF-8")) {
+            csv.println(Row.CSV_HEADER);
+            for (Row row : rows) {
+                csv.println(row.csv());
+            }
+        }
+    }
+
+    private static final class Scenario {
+        final String name;
+        final int bodySize;
+        final boolean instrumented;
+        final boolean capture;
+        final boolean redact;
+
+        Scenario(String name, int bodySize, boolean instrumented, boolean capture, boolean redact) {
+            this.name = name;
+            this.bodySize = bodySize;
+            this.instrumented = instrumented;
+            this.capture = capture;
+            this.redact = redact;
+        }
+    }
+
+    /**
+     * Process-wide GC, heap and allocation counters.
+     */
+    private static final class Usage {
+        final long gcCount;
+        final long gcMillis;
+        final long heapUsed;
+        final long allocated;
+
+        Usage(long gcCount, long gcMillis, long heapUsed, long allocated) {
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+            this.heapUsed = heapUsed;
+            this.allocated = allocated;
+        }
+
+        static Usage now() {
+            long count = 0;
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+                millis += Math.max(0, gc.getCollectionTime());
+            }
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            return new Usage(count, millis, memory.getHeapMemoryUsage().getUsed(), allocated());
+        }
+
+        // Bytes allocated by live threads; threads that ended in between are
+        // missed. Server threads are pooled and the generator's workers, which
+        // end with each run, report their own share through plusAllocated.
+        private static long allocated() {
+            if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+                return -1;
+            }
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                    .getThreadMXBean();
+            long total = 0;
+            for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+                total += Math.max(0, bytes);
+            }
+            return total;
+        }
+
+        Usage minus(Usage before) {
+            return new Usage(gcCount - before.gcCount, gcMillis - before.gcMillis, heapUsed,
+                    allocated < 0 || before.allocated < 0 ? -1 : allocated - before.allocated);
+        }
+
+        Usage plusAllocated(long bytes) {
+            return new Usage(gcCount, gcMillis, heapUsed, allocated < 0 || bytes < 0 ? -1 : allocated + bytes);
+        }
+    }
+
+    private static final class Row {
+        static final String HEADER = String.format(Locale.ROOT,
+                "%-20s %8s %9s %8s %8s %8s %8s %7s %5s %7s %10s %9s %10s",
+                "scenario", "body", "req/s", "p50 ms", "p90 ms", "p99 ms", "p999 ms", "errors", "gcs",
+                "gc ms", "alloc/req", "heap MB", "otlp B/req");
+        static final String CSV_HEADER = "scenario,body_bytes,requests,errors,throughput,p50_ms,p90_ms,p99_ms,"
+                + "p999_ms,gc_count,gc_ms,alloc_bytes_per_req,heap_used_bytes,otlp_exports,otlp_bytes_per_req";
+
+        final Scenario scenario;
+        final LoadGenerator.Result result;
+        final Usage used;
+        final long exports;
+        final long exportedBytes;
+
+        Row(Scenario scenario, LoadGenerator.Result result, Usage used, long exports, long exportedBytes) {
+            this.scenario = scenario;
+            this.result = result;
+            this.used = used;
+            this.exports = exports;
+            this.exportedBytes = exportedBytes;
+        }
+
+        long perRequest(long total) {
+            return total < 0 || result.requests() == 0 ? -1 : total / result.requests();
+        }
+
+        String format() {
+            return String.format(Locale.ROOT,
+                    "%-20s %8d %9.0f %8.2f %8.2f %8.2f %8.2f %7d %5d %7d %10d %9.1f %10d",
+                    scenario.name, scenario.bodySize, result.throughput(), result.percentile(50),
+                    result.percentile(90), result.percentile(99), result.percentile(99.9), result.errors,
+                    used.gcCount, used.gcMillis, perRequest(used.allocated), used.heapUsed / 1048576.0,
+                    perRequest(exportedBytes));
+        }
+
+        String csv() {
+            return String.format(Locale.ROOT, "%s,%d,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%d,%d,%d,%d,%d,%d",
+                    scenario.name, scenario.bodySize, result.requests(), result.errors, result.throughput(),
+                    result.percentile(50), result.percentile(90), result.percentile(99),
+                    result.percentile(99.9), used.gcCount, used.gcMillis, perRequest(used.allocated),
+                    used.heapUsed, exports, perRequest(exportedBytes));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package io.apitoolkit.springboot.benchmarks.harness;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stand-in for an OpenTelemetry collector: accepts OTLP/HTTP exports on
+ * /v1/traces, counts them and answers with an empty success response. An
+ * optional delay per export simulates a slow collector, so exporter
+ * back-pressure shows up in the results.
+ */
+final class OtlpReceiver implements AutoCloseable {
+
+    private final HttpServer server;
+    private final long delayMillis;
+    private final AtomicLong exports = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    OtlpReceiver(long delayMillis) throws IOException {
+        this.delayMillis = delayMillis;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/v1/traces", this::handle);
+        this.server.setExecutor(Executors.newFixedThreadPool(2));
+        this.server.start();
+    }
+
+    String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/traces";
+    }
+
+    long exports() {
+        return exports.get();
+    }
+
+    long bytes() {
+        return bytes.get();
+    }
+
+    void reset() {
+        exports.set(0);
+        bytes.set(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long read = 0;
+        byte[] buffer = new byte[16 * 1024];
+        try (InputStream in = exchange.getRequestBody()) {
+            for (int n; (n = in.read(buffer)) != -1;) {
+                read += n;
+            }
+        }
+        if (delayMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        exports.incrementAndGet();
+        bytes.addAndGet(read);
+        exchange.getResponseHeaders().set("Content-Type", "application/x-protobuf");
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        ((java.util.concurrent.ExecutorService) server.getExecutor()).shutdownNow();
+    }
+}
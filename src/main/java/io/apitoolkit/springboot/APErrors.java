@@ -1,14 +1,33 @@
 package io.apitoolkit.springboot;
 
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import jakarta.servlet.http.HttpServletRequest;
 
 public class APErrors {
+  private static final DateTimeFormatter WHEN = DateTimeFormatter
+      .ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+      .withZone(ZoneOffset.UTC);
+
+  // Frames kept in stack_trace, deeper frames are summarized in one line.
+  static final int MAX_STACK_FRAMES = 64;
+  // Frames that, with the exception types, identify an error.
+  static final int FINGERPRINT_FRAMES = 8;
+  // Distinct errors kept in one request, repeats only bump a counter.
+  static final int MAX_ERRORS_PER_REQUEST = 32;
+  // Errors are thrown from code, not input, but stop caching past this many.
+  static final int MAX_CACHED_FINGERPRINTS = 1024;
+
+  private static final ConcurrentHashMap<Long, Fingerprint> FINGERPRINTS = new ConcurrentHashMap<>();
+
   private static Throwable rootCause(Throwable err) {
     Throwable cause = err;
-    while (cause != null && cause.getCause() != null) {
+    while (cause != null && cause.getCause() != null && cause.getCause() != cause) {
       cause = cause.getCause();
     }
     return cause;
@@ -18,44 +37,147 @@ public class APErrors {
     return value instanceof Throwable;
   }
 
+  /**
+   * Error entry for the apitoolkit.errors attribute. The stack trace of an
+   * error seen before (same types, same top frames) is not rendered again;
+   * "fingerprint" identifies it and "occurrences" counts it process-wide.
+   */
   public static Map<String, Object> buildError(Throwable err) {
-    String errType = err.getClass().getName();
     Throwable rootError = rootCause(err);
-    String rootErrorType = rootError.getClass().getName();
-    Date currentDate = new Date();
-    SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-    dateFormat.setTimeZone(java.util.TimeZone.getTimeZone("UTC"));
-    String isoString = dateFormat.format(currentDate);
+    StackTraceElement[] frames = err.getStackTrace();
+    Fingerprint fingerprint = fingerprint(err, rootError, frames);
 
     Map<String, Object> errorInfo = new HashMap<>();
-    errorInfo.put("when", isoString);
-    errorInfo.put("error_type", errType);
+    errorInfo.put("when", WHEN.format(Instant.now()));
+    errorInfo.put("error_type", fingerprint.errorType);
     errorInfo.put("message", err.getMessage());
-    errorInfo.put("root_error_type", rootErrorType);
+    errorInfo.put("root_error_type", fingerprint.rootErrorType);
     errorInfo.put("root_error_message", rootError.getMessage());
-    errorInfo.put("stack_trace", getStackTraceAsString(err));
+    errorInfo.put("stack_trace", fingerprint.stackTrace);
+    errorInfo.put("fingerprint", fingerprint.id);
+    errorInfo.put("occurrences", fingerprint.occurrences.incrementAndGet());
     return errorInfo;
   }
 
-  private static String getStackTraceAsString(Throwable throwable) {
+  private static Fingerprint fingerprint(Throwable err, Throwable rootError, StackTraceElement[] frames) {
+    String errType = err.getClass().getName();
+    String rootErrorType = rootError.getClass().getName();
+    long hash = errType.hashCode() * 31L + rootErrorType.hashCode();
+    for (int i = 0; i < frames.length && i < FINGERPRINT_FRAMES; i++) {
+      StackTraceElement frame = frames[i];
+      hash = hash * 31 + frame.getClassName().hashCode();
+      hash = hash * 31 + frame.getMethodName().hashCode();
+      hash = hash * 31 + frame.getLineNumber();
+    }
+    Long key = hash;
+    Fingerprint fingerprint = FINGERPRINTS.get(key);
+    if (fingerprint != null && fingerprint.matches(errType, rootErrorType, frames)) {
+      return fingerprint;
+    }
+    fingerprint = new Fingerprint(String.format("%016x", hash), errType, rootErrorType, frames,
+        getStackTraceAsString(frames));
+    if (FINGERPRINTS.size() < MAX_CACHED_FINGERPRINTS) {
+      Fingerprint existing = FINGERPRINTS.putIfAbsent(key, fingerprint);
+      if (existing != null && existing.matches(errType, rootErrorType, frames)) {
+        return existing;
+      }
+    }
+    return fingerprint;
+  }
+
+  private static String getStackTraceAsString(StackTraceElement[] frames) {
     StringBuilder sb = new StringBuilder();
-    for (StackTraceElement element : throwable.getStackTrace()) {
-      sb.append(element.toString()).append("\n");
+    int shown = Math.min(frames.length, MAX_STACK_FRAMES);
+    for (int i = 0; i < shown; i++) {
+      sb.append(frames[i].toString()).append("\n");
+    }
+    if (frames.length > shown) {
+      sb.append("... ").append(frames.length - shown).append(" more\n");
     }
     return sb.toString();
   }
 
+  /**
+   * Adds the error to a request's error list. An error with the same
+   * fingerprint as one already in the list only increments that entry's
+   * "count", and at most MAX_ERRORS_PER_REQUEST distinct errors are kept.
+   */
+  public static void addError(List<Map<String, Object>> errorList, Throwable e) {
+    Map<String, Object> error = buildError(e);
+    if (errorList instanceof ErrorCollector) {
+      errorList.add(error);
+      return;
+    }
+    Object id = error.get("fingerprint");
+    synchronized (errorList) {
+      for (Map<String, Object> existing : errorList) {
+        if (id.equals(existing.get("fingerprint"))) {
+          Object count = existing.get("count");
+          existing.put("count", count instanceof Integer ? (Integer) count + 1 : 2);
+          return;
+        }
+      }
+      if (errorList.size() < MAX_ERRORS_PER_REQUEST) {
+        errorList.add(error);
+      }
+    }
+  }
+
   public static void reportError(HttpServletRequest request, Throwable e) {
     if (isError(e)) {
-      Map<String, Object> error = buildError(e);
       @SuppressWarnings("unchecked")
       List<Map<String, Object>> errorList = (List<Map<String, Object>>) request.getAttribute("APITOOLKIT_ERRORS");
+      if (errorList instanceof ErrorCollector) {
+        addError(errorList, e);
+        return;
+      }
       if (errorList == null) {
         errorList = new ArrayList<>();
       }
-      errorList.add(error);
+      addError(errorList, e);
       request.setAttribute("APITOOLKIT_ERRORS", errorList);
     }
   }
 
+  /**
+   * Reports an error against the request served on the current
+   * OpenTelemetry context, from any thread. Work handed to other threads
+   * keeps the context when its executor is wrapped with
+   * {@code Context.taskWrapping(executor)}. Returns false when there is no
+   * request on the context or its collector is full.
+   */
+  public static boolean reportError(Throwable e) {
+    ErrorCollector errors = APIToolkitContext.currentErrors();
+    if (errors == null || !isError(e)) {
+      return false;
+    }
+    return errors.add(buildError(e));
+  }
+
+  private static final class Fingerprint {
+    final String id;
+    final String errorType;
+    final String rootErrorType;
+    final int frameCount;
+    final StackTraceElement topFrame;
+    final String stackTrace;
+    final AtomicLong occurrences = new AtomicLong();
+
+    Fingerprint(String id, String errorType, String rootErrorType, StackTraceElement[] frames, String stackTrace) {
+      this.id = id;
+      this.errorType = errorType;
+      this.rootErrorType = rootErrorType;
+      this.frameCount = frames.length;
+      this.topFrame = frames.length > 0 ? frames[0] : null;
+      this.stackTrace = stackTrace;
+    }
+
+    // The hash is only 64 bits of class, method and line names, a cached
+    // entry is reused only when the types, depth and throwing frame agree.
+    boolean matches(String errorType, String rootErrorType, StackTraceElement[] frames) {
+      return this.errorType.equals(errorType) && this.rootErrorType.equals(rootErrorType)
+          && this.frameCount == frames.length
+          && Objects.equals(this.topFrame, frames.length > 0 ? frames[0] : null);
+    }
+  }
 }
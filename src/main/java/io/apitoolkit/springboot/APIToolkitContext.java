@@ -0,0 +1,34 @@
+package io.apitoolkit.springboot;
+
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.ContextKey;
+
+/**
+ * OpenTelemetry context entries set by {@link APIToolkitFilter} for the
+ * duration of a request, so integrations can find the inbound message id
+ * without holding on to the HttpServletRequest.
+ */
+public final class APIToolkitContext {
+
+    public static final ContextKey<String> MESSAGE_ID = ContextKey.named("apitoolkit-message-id");
+    public static final ContextKey<ErrorCollector> ERRORS = ContextKey.named("apitoolkit-errors");
+
+    private APIToolkitContext() {
+    }
+
+    /**
+     * Message id of the inbound request being served on this context, or
+     * null outside of one.
+     */
+    public static String currentMessageId() {
+        return Context.current().get(MESSAGE_ID);
+    }
+
+    /**
+     * Error collector of the inbound request being served on this context, or
+     * null outside of one.
+     */
+    public static ErrorCollector currentErrors() {
+        return Context.current().get(ERRORS);
+    }
+}
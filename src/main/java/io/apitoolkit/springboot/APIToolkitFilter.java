@@ -1,23 +1,30 @@
 package io.apitoolkit.springboot;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.servlet.HandlerMapping;
-import org.springframework.web.util.ContentCachingRequestWrapper;
-import org.springframework.web.util.ContentCachingResponseWrapper;
 
 import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.OpenTelemetry;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.FilterConfig;
@@ -33,9 +40,13 @@ public class APIToolkitFilter implements Filter {
     private Boolean debug;
     @Value("${apitoolkit.redactHeaders:}")
     private String[] redactHeaders;
-    @Value("${apitoolkit.redactRequestBody:")
+    @Value("${apitoolkit.captureHeaders:}")
+    private String[] captureHeaders;
+    @Value("${apitoolkit.skipHeaders:}")
+    private String[] skipHeaders;
+    @Value("${apitoolkit.redactRequestBody:}")
     private String[] redactRequestBody;
-    @Value("${apitoolkit.redactResponseBody:")
+    @Value("${apitoolkit.redactResponseBody:}")
     private String[] redactResponseBody;
     @Value("${apitoolkit.captureRequest_body:false}")
     private Boolean captureRequestBody;
@@ -47,6 +58,76 @@ public class APIToolkitFilter implements Filter {
     private String serviceVersion;
     @Value("${apitoolkit.tags:}")
     private String tags;
+    @Value("${apitoolkit.captureContentTypes:}")
+    private String[] captureContentTypes;
+    @Value("${apitoolkit.bodyEncoding:base64}")
+    private String bodyEncoding;
+    @Value("${apitoolkit.bodyCompression:none}")
+    private String bodyCompression;
+    @Value("${apitoolkit.bodyCompressionThreshold:1024}")
+    private Integer bodyCompressionThreshold;
+    @Value("${apitoolkit.bodyShapeDedup:false}")
+    private Boolean bodyShapeDedup;
+    @Value("${apitoolkit.bodyShapeRefreshSeconds:600}")
+    private Integer bodyShapeRefreshSeconds;
+    @Value("${apitoolkit.bodyShapeCacheSize:10000}")
+    private Integer bodyShapeCacheSize;
+    @Value("${apitoolkit.maxCapturedBodyBytes:-1}")
+    private Integer maxCapturedBodyBytes;
+    @Value("${apitoolkit.asyncPayloads:false}")
+    private Boolean asyncPayloads;
+    @Value("${apitoolkit.asyncQueueCapacity:2048}")
+    private Integer asyncQueueCapacity;
+    @Value("${apitoolkit.asyncWorkers:1}")
+    private Integer asyncWorkers;
+    @Value("${apitoolkit.asyncOverflowPolicy:drop-newest}")
+    private String asyncOverflowPolicy;
+    @Value("${apitoolkit.sampleRate:1.0}")
+    private Double sampleRate;
+    @Value("${apitoolkit.routeSampleRates:}")
+    private String routeSampleRates;
+    @Value("${apitoolkit.includePaths:}")
+    private String[] includePaths;
+    @Value("${apitoolkit.excludePaths:}")
+    private String[] excludePaths;
+
+    @Value("${apitoolkit.messageIdStrategy:random-uuid}")
+    private String messageIdStrategy;
+    @Value("${apitoolkit.queryParamMode:parameter-map}")
+    private String queryParamMode;
+
+    @Value("${apitoolkit.tailSampling:false}")
+    private Boolean tailSampling;
+    @Value("${apitoolkit.tailSampleRate:0.01}")
+    private Double tailSampleRate;
+    @Value("${apitoolkit.tailLatencyPercentile:0.99}")
+    private Double tailLatencyPercentile;
+
+    @Value("${apitoolkit.selfMetrics:true}")
+    private Boolean selfMetrics;
+    @Value("${apitoolkit.selfMetricsJmx:false}")
+    private Boolean selfMetricsJmx;
+    @Value("${apitoolkit.routeMetrics:false}")
+    private Boolean routeMetricsEnabled;
+
+    private PayloadPipeline payloadPipeline;
+    private HeadSampler headSampler;
+    private PathSelector pathSelector;
+    private TailSampler tailSampler;
+    private CaptureBufferPool capturePool;
+    private RouteMetrics routeMetrics;
+
+    private RedactionPlan requestBodyRedaction = RedactionPlan.EMPTY;
+    private RedactionPlan responseBodyRedaction = RedactionPlan.EMPTY;
+
+    // Resolved on the first request, see tracer().
+    private volatile Tracer tracer;
+    // Built once in init, shared by every request.
+    private ExchangeConfig exchangeConfig;
+    private HashMap<String, Object> requestConfig;
+    private MessageIdStrategy messageIds = MessageIdStrategy.RANDOM_UUID;
+    private ContentTypePolicy contentTypePolicy = ContentTypePolicy.DEFAULT;
+    private QueryParams.Mode queryParams = QueryParams.Mode.PARAMETER_MAP;
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
@@ -59,6 +140,14 @@ public class APIToolkitFilter implements Filter {
         String rHeaders = filterConfig.getInitParameter("apitoolkit.redactHeaders");
         this.redactHeaders = this.redactHeaders != null ? this.redactHeaders
                 : rHeaders != null ? rHeaders.split(",") : emptyList;
+        if (this.captureHeaders == null) {
+            String names = filterConfig.getInitParameter("apitoolkit.captureHeaders");
+            this.captureHeaders = names != null ? names.split(",") : emptyList;
+        }
+        if (this.skipHeaders == null) {
+            String names = filterConfig.getInitParameter("apitoolkit.skipHeaders");
+            this.skipHeaders = names != null ? names.split(",") : emptyList;
+        }
         if (this.redactRequestBody == null) {
             String req_body = filterConfig.getInitParameter("apitoolkit.redactRequestBody");
             this.redactRequestBody = req_body != null ? req_body.split(",") : emptyList;
@@ -90,59 +179,449 @@ public class APIToolkitFilter implements Filter {
         if (this.captureResponseBody == null) {
             this.captureResponseBody = Boolean.parseBoolean(filterConfig.getInitParameter("apitoolkit.captureResponseBody"));
         }
+        if (this.captureContentTypes == null) {
+            String types = filterConfig.getInitParameter("apitoolkit.captureContentTypes");
+            this.captureContentTypes = types != null ? types.split(",") : emptyList;
+        }
+        if (this.bodyEncoding == null) {
+            this.bodyEncoding = filterConfig.getInitParameter("apitoolkit.bodyEncoding");
+        }
+        this.contentTypePolicy = ContentTypePolicy.of(this.captureContentTypes);
+        if (this.bodyCompression == null) {
+            this.bodyCompression = filterConfig.getInitParameter("apitoolkit.bodyCompression");
+        }
+        if (this.bodyCompressionThreshold == null) {
+            String threshold = filterConfig.getInitParameter("apitoolkit.bodyCompressionThreshold");
+            this.bodyCompressionThreshold = threshold != null ? Integer.parseInt(threshold.trim()) : 1024;
+        }
+        if (this.bodyShapeDedup == null) {
+            this.bodyShapeDedup = Boolean.parseBoolean(filterConfig.getInitParameter("apitoolkit.bodyShapeDedup"));
+        }
+        if (this.bodyShapeRefreshSeconds == null) {
+            String seconds = filterConfig.getInitParameter("apitoolkit.bodyShapeRefreshSeconds");
+            this.bodyShapeRefreshSeconds = seconds != null ? Integer.parseInt(seconds.trim()) : 600;
+        }
+        if (this.bodyShapeCacheSize == null) {
+            String size = filterConfig.getInitParameter("apitoolkit.bodyShapeCacheSize");
+            this.bodyShapeCacheSize = size != null ? Integer.parseInt(size.trim()) : 10000;
+        }
+        if (this.maxCapturedBodyBytes == null) {
+            String maxBytes = filterConfig.getInitParameter("apitoolkit.maxCapturedBodyBytes");
+            this.maxCapturedBodyBytes = maxBytes != null ? Integer.parseInt(maxBytes.trim()) : -1;
+        }
+        if (this.asyncPayloads == null) {
+            this.asyncPayloads = Boolean.parseBoolean(filterConfig.getInitParameter("apitoolkit.asyncPayloads"));
+        }
+        if (this.asyncQueueCapacity == null) {
+            String capacity = filterConfig.getInitParameter("apitoolkit.asyncQueueCapacity");
+            this.asyncQueueCapacity = capacity != null ? Integer.parseInt(capacity.trim()) : 2048;
+        }
+        if (this.asyncWorkers == null) {
+            String workers = filterConfig.getInitParameter("apitoolkit.asyncWorkers");
+            this.asyncWorkers = workers != null ? Integer.parseInt(workers.trim()) : 1;
+        }
+        if (this.asyncOverflowPolicy == null) {
+            this.asyncOverflowPolicy = filterConfig.getInitParameter("apitoolkit.asyncOverflowPolicy");
+        }
+        if (this.asyncPayloads) {
+            this.payloadPipeline = new PayloadPipeline(this.asyncQueueCapacity, this.asyncWorkers,
+                    PayloadPipeline.OverflowPolicy.parse(this.asyncOverflowPolicy), this.debug);
+        }
+        if (this.sampleRate == null) {
+            String rate = filterConfig.getInitParameter("apitoolkit.sampleRate");
+            this.sampleRate = rate != null ? Double.parseDouble(rate.trim()) : 1.0;
+        }
+        if (this.routeSampleRates == null) {
+            this.routeSampleRates = filterConfig.getInitParameter("apitoolkit.routeSampleRates");
+        }
+        HeadSampler sampler = HeadSampler.parse(this.sampleRate, this.routeSampleRates);
+        this.headSampler = sampler.isSampleAll() ? null : sampler;
+        if (this.includePaths == null) {
+            String paths = filterConfig.getInitParameter("apitoolkit.includePaths");
+            this.includePaths = paths != null ? paths.split(",") : emptyList;
+        }
+        if (this.excludePaths == null) {
+            String paths = filterConfig.getInitParameter("apitoolkit.excludePaths");
+            this.excludePaths = paths != null ? paths.split(",") : emptyList;
+        }
+        PathSelector selector = PathSelector.parse(this.includePaths, this.excludePaths);
+        this.pathSelector = selector.selectsAll() ? null : selector;
+        if (this.tailSampling == null) {
+            this.tailSampling = Boolean.parseBoolean(filterConfig.getInitParameter("apitoolkit.tailSampling"));
+        }
+        if (this.tailSampleRate == null) {
+            String rate = filterConfig.getInitParameter("apitoolkit.tailSampleRate");
+            this.tailSampleRate = rate != null ? Double.parseDouble(rate.trim()) : 0.01;
+        }
+        if (this.tailLatencyPercentile == null) {
+            String percentile = filterConfig.getInitParameter("apitoolkit.tailLatencyPercentile");
+            this.tailLatencyPercentile = percentile != null ? Double.parseDouble(percentile.trim()) : 0.99;
+        }
+        if (this.tailSampling) {
+            this.tailSampler = new TailSampler(this.tailSampleRate, this.tailLatencyPercentile);
+        }
+        if (this.messageIdStrategy == null) {
+            this.messageIdStrategy = filterConfig.getInitParameter("apitoolkit.messageIdStrategy");
+        }
+        this.messageIds = MessageIdStrategy.parse(this.messageIdStrategy);
+        if (this.queryParamMode == null) {
+            this.queryParamMode = filterConfig.getInitParameter("apitoolkit.queryParamMode");
+        }
+        this.queryParams = QueryParams.Mode.parse(this.queryParamMode);
+        if (this.selfMetrics == null) {
+            String enabled = filterConfig.getInitParameter("apitoolkit.selfMetrics");
+            this.selfMetrics = enabled == null || Boolean.parseBoolean(enabled);
+        }
+        if (this.selfMetricsJmx == null) {
+            this.selfMetricsJmx = Boolean.parseBoolean(filterConfig.getInitParameter("apitoolkit.selfMetricsJmx"));
+        }
+        if (this.selfMetricsJmx) {
+            SdkMetrics.registerJmx();
+        }
+        SdkMetrics.setTimingEnabled(this.selfMetrics || this.selfMetricsJmx);
+        if (this.routeMetricsEnabled == null) {
+            this.routeMetricsEnabled = Boolean.parseBoolean(filterConfig.getInitParameter("apitoolkit.routeMetrics"));
+        }
+        if (this.routeMetricsEnabled) {
+            this.routeMetrics = new RouteMetrics();
+        }
+        this.capturePool = new CaptureBufferPool(this.maxCapturedBodyBytes, 256, 64 * 1024);
+        this.requestBodyRedaction = RedactionPlan.compile(this.redactRequestBody, this.debug);
+        this.responseBodyRedaction = RedactionPlan.compile(this.redactResponseBody, this.debug);
+        this.exchangeConfig = ExchangeConfig.builder("JavaSpringBoot")
+                .serviceVersion(this.serviceVersion)
+                .tags(this.tags)
+                .debug(this.debug)
+                .redactHeaders(Arrays.asList(this.redactHeaders))
+                .captureHeaders(Arrays.asList(this.captureHeaders))
+                .skipHeaders(Arrays.asList(this.skipHeaders))
+                .requestBodyRedaction(this.requestBodyRedaction)
+                .responseBodyRedaction(this.responseBodyRedaction)
+                .textBodies("text".equalsIgnoreCase(this.bodyEncoding))
+                .bodyCompression(BodyCompression.parse(this.bodyCompression), this.bodyCompressionThreshold)
+                .bodyShapes(this.bodyShapeDedup
+                        ? new BodyShapeCache(this.bodyShapeCacheSize, this.bodyShapeRefreshSeconds) : null)
+                .build();
+        // Read by ObserveRequest and the interceptors through the request attribute.
+        this.requestConfig = new HashMap<>();
+        this.requestConfig.put("debug", this.debug);
         if (this.debug == true) {
             System.out.println("Client initialized successfully");
         }
     }
 
     @Override
-    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
-            throws IOException, ServletException {
+    public void destroy() {
+        if (this.payloadPipeline != null) {
+            this.payloadPipeline.shutdown(5000);
+        }
+    }
 
-        Tracer tracer = GlobalOpenTelemetry.getTracer(this.serviceName);
-        Span span = tracer.spanBuilder("apitoolkit-http-span").startSpan();
+    private Tracer tracer() {
+        Tracer tracer = this.tracer;
+        return tracer != null ? tracer : resolveTelemetry();
+    }
+
+    // GlobalOpenTelemetry.get() installs a no-op instance for good when
+    // nothing is registered yet, which would make an SDK set up after the
+    // filter's init() fail to register, so it is first called here.
+    private synchronized Tracer resolveTelemetry() {
+        if (this.tracer == null) {
+            OpenTelemetry openTelemetry = GlobalOpenTelemetry.get();
+            if (this.selfMetrics) {
+                SdkMetrics.register(openTelemetry);
+            }
+            if (this.routeMetrics != null) {
+                this.routeMetrics.register(openTelemetry);
+            }
+            this.tracer = openTelemetry.getTracer(this.serviceName);
+        }
+        return this.tracer;
+    }
+
+    public PayloadPipeline getPayloadPipeline() {
+        return this.payloadPipeline;
+    }
 
+    public RouteMetrics getRouteMetrics() {
+        return this.routeMetrics;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
         HttpServletRequest req = (HttpServletRequest) request;
+        // The exchange is already tracked by the listener registered on the
+        // original dispatch, an async dispatch only produces the response.
+        if (req.getDispatcherType() == DispatcherType.ASYNC) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if ((this.pathSelector != null && !isSelected(req))
+                || (this.headSampler != null && !this.headSampler.sample(req))) {
+            passThrough(req, (HttpServletResponse) response, chain);
+            return;
+        }
+
         HttpServletResponse res = (HttpServletResponse) response;
-        List<Map<String, Object>> errors = new ArrayList<>();
 
-        final ContentCachingRequestWrapper requestCache = new ContentCachingRequestWrapper(req);
-        final ContentCachingResponseWrapper responseCache = new ContentCachingResponseWrapper(res);
-        Integer statusCode = 200;
-        String msgId = UUID.randomUUID().toString();
+        // Bodies are only wrapped when they are captured, and the wrappers
+        // stream through while keeping at most maxCapturedBodyBytes. Content
+        // types outside captureContentTypes are only summarized.
+        BodyCaptureRequestWrapper requestCapture = null;
+        if (this.captureRequestBody) {
+            CaptureBuffer buffer = this.capturePool.acquire();
+            buffer.setMetadataOnly(!this.contentTypePolicy.captures(req.getContentType()));
+            requestCapture = new BodyCaptureRequestWrapper(req, buffer);
+        }
+        final BodyCaptureResponseWrapper responseCapture = this.captureResponseBody
+                ? new BodyCaptureResponseWrapper(res, this.capturePool.acquire(), this.contentTypePolicy)
+                : null;
+        HttpServletRequest chainRequest = requestCapture != null ? requestCapture : req;
+        HttpServletResponse chainResponse = responseCapture != null ? responseCapture : res;
+        Exchange exchange = new Exchange(tracer(), req, res, chainRequest, requestCapture, responseCapture);
 
         try {
-            requestCache.setAttribute("APITOOLKIT_ERRORS", errors);
-            HashMap<String, Object> config = new HashMap<>();
-            config.put("debug", this.debug);
-            requestCache.setAttribute("apitoolkit_config", config);
+            req.setAttribute("APITOOLKIT_ERRORS", exchange.errors);
+            req.setAttribute("apitoolkit_config", this.requestConfig);
             req.setAttribute("apitoolkit_filter", this);
-            req.setAttribute("apitoolkit_message_id", msgId);
-            chain.doFilter(requestCache, responseCache);
+            req.setAttribute("apitoolkit_message_id", exchange.msgId);
+            Scope scope = Context.current()
+                    .with(APIToolkitContext.MESSAGE_ID, exchange.msgId)
+                    .with(APIToolkitContext.ERRORS, exchange.errors)
+                    .makeCurrent();
+            try {
+                chain.doFilter(chainRequest, chainResponse);
+            } finally {
+                scope.close();
+            }
         } catch (Exception e) {
             e.printStackTrace();
-            statusCode = 500;
-            APErrors.reportError(requestCache, e);
+            exchange.failed = true;
+            APErrors.reportError(req, e);
             throw e;
         } finally {
-            final byte[] req_body = this.captureRequestBody ? requestCache.getContentAsByteArray() : "".getBytes();
-            final byte[] res_body = this.captureResponseBody ? responseCache.getContentAsByteArray() : "".getBytes();
-            statusCode = statusCode == 500 ? 500 : responseCache.getStatus();
-            responseCache.copyBodyToResponse();
-            try {
-                buildPayload(span, requestCache, responseCache, req_body, res_body,
-                        statusCode, msgId);
-            } catch (Exception e) {
-                span.end();
-                if (this.debug) {
-                    e.printStackTrace();
+            if (!exchange.failed && req.isAsyncStarted()) {
+                // DeferredResult, Callable, StreamingResponseBody...: the
+                // response is written after we return.
+                req.getAsyncContext().addListener(exchange);
+            } else {
+                exchange.finish();
+            }
+        }
+    }
+
+    /**
+     * Runs the chain for a request that is not recorded, only counting it in
+     * the route metrics.
+     */
+    private void passThrough(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        if (this.routeMetrics == null) {
+            chain.doFilter(req, res);
+            return;
+        }
+        if (this.tracer == null) {
+            // The route metrics register on the first request, recorded or not.
+            resolveTelemetry();
+        }
+        long startNanos = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(req, res);
+            failed = false;
+        } finally {
+            if (!failed && req.isAsyncStarted()) {
+                req.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        recordRoute(req, res.getStatus(), startNanos);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                        event.getAsyncContext().addListener(this);
+                    }
+                });
+            } else {
+                recordRoute(req, failed ? 500 : res.getStatus(), startNanos);
+            }
+        }
+    }
+
+    private void recordRoute(HttpServletRequest req, int statusCode, long startNanos) {
+        this.routeMetrics.record((String) req.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE),
+                req.getMethod(), statusCode, System.nanoTime() - startNanos);
+    }
+
+    Map<String, String> requestParams(HttpServletRequest req, CapturedBody reqBody) {
+        if (this.queryParams == QueryParams.Mode.QUERY_STRING) {
+            Map<String, String> params = QueryParams.parse(req.getQueryString(), StandardCharsets.UTF_8);
+            // Form parameters only come from a complete captured body, the
+            // container is never asked to parse it.
+            if (QueryParams.isForm(req.getContentType())
+                    && !reqBody.isMetadataOnly() && !reqBody.isTruncated() && reqBody.getBytes().length > 0) {
+                Charset charset = QueryParams.charset(req.getCharacterEncoding());
+                QueryParams.parseInto(params, new String(reqBody.getBytes(), charset), charset);
+            }
+            return params;
+        }
+        Map<String, String[]> paramsH = req.getParameterMap();
+        Map<String, String> params = new HashMap<>();
+        for (Map.Entry<String, String[]> entry : paramsH.entrySet()) {
+            String key = entry.getKey();
+            String[] values = entry.getValue();
+            params.put(key, String.join(", ", values));
+        }
+        return params;
+    }
+
+    private boolean isSelected(HttpServletRequest req) {
+        String uri = req.getRequestURI();
+        String contextPath = req.getContextPath();
+        int offset = contextPath != null && uri.startsWith(contextPath) ? contextPath.length() : 0;
+        return this.pathSelector.selects(uri, offset);
+    }
+
+    /**
+     * State of one captured request, finished either when the chain returns
+     * or, for async requests, when the AsyncContext completes.
+     */
+    private final class Exchange implements AsyncListener {
+
+        final Tracer tracer;
+        final HttpServletRequest req;
+        final HttpServletResponse res;
+        final HttpServletRequest chainRequest;
+        final BodyCaptureRequestWrapper requestCapture;
+        final BodyCaptureResponseWrapper responseCapture;
+        final ErrorCollector errors = new ErrorCollector();
+        final String msgId;
+        // With tail sampling the span is only started once we know it is kept,
+        // backdated to the start of the request.
+        final Instant startTime = Instant.now();
+        final long startNanos = System.nanoTime();
+        final AtomicBoolean finished = new AtomicBoolean();
+        Span span;
+        volatile boolean failed;
+        volatile boolean asyncError;
+
+        Exchange(Tracer tracer, HttpServletRequest req, HttpServletResponse res, HttpServletRequest chainRequest,
+                BodyCaptureRequestWrapper requestCapture, BodyCaptureResponseWrapper responseCapture) {
+            this.tracer = tracer;
+            this.req = req;
+            this.res = res;
+            this.chainRequest = chainRequest;
+            this.requestCapture = requestCapture;
+            this.responseCapture = responseCapture;
+            this.span = tailSampler == null ? tracer.spanBuilder("apitoolkit-http-span").startSpan() : null;
+            this.msgId = messageIds.generate(this.span);
+        }
+
+        void finish() {
+            if (!this.finished.compareAndSet(false, true)) {
+                return;
+            }
+            if (this.responseCapture != null) {
+                this.responseCapture.finish();
+            }
+            int statusCode = this.failed ? 500 : this.res.getStatus();
+            if (this.asyncError && statusCode < 400) {
+                statusCode = 500;
+            }
+            if (routeMetrics != null) {
+                recordRoute(this.req, statusCode, this.startNanos);
+            }
+            boolean keep = tailSampler == null || tailSampler.keep(
+                    (String) this.req.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE),
+                    statusCode, this.errors, System.nanoTime() - this.startNanos);
+            if (keep) {
+                if (this.span == null) {
+                    this.span = this.tracer.spanBuilder("apitoolkit-http-span").setStartTimestamp(this.startTime)
+                            .startSpan();
                 }
+                long start = SdkMetrics.start();
+                try {
+                    buildPayload(this.span, this.chainRequest, this.res,
+                            CapturedBody.from(requestBody()),
+                            CapturedBody.from(this.responseCapture != null ? this.responseCapture.getCapture() : null),
+                            statusCode, this.msgId);
+                } catch (Exception e) {
+                    SdkMetrics.payloadFailed();
+                    this.span.end();
+                    if (debug) {
+                        e.printStackTrace();
+                    }
+                }
+                SdkMetrics.record(SdkMetrics.Phase.FILTER, start);
+            }
+            if (this.requestCapture != null) {
+                capturePool.release(this.requestCapture.getRawCapture());
+            }
+            if (this.responseCapture != null) {
+                capturePool.release(this.responseCapture.getCapture());
+            }
+        }
+
+        private CaptureBuffer requestBody() {
+            if (this.requestCapture == null) {
+                return null;
             }
+            // getCapture() rebuilds unread form bodies from getParameterMap(),
+            // which query-string mode never calls.
+            return queryParams == QueryParams.Mode.QUERY_STRING ? this.requestCapture.getRawCapture()
+                    : this.requestCapture.getCapture();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            finish();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // The container still dispatches the timeout handling and then
+            // completes, the final status is known in onComplete.
+            APErrors.reportError(this.req, event.getThrowable() != null ? event.getThrowable()
+                    : new TimeoutException("Async request timed out"));
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            this.asyncError = true;
+            if (event.getThrowable() != null) {
+                APErrors.reportError(this.req, event.getThrowable());
+            }
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Listeners are dropped when async processing is started again.
+            event.getAsyncContext().addListener(this);
         }
     }
 
+    /**
+     * @deprecated the filter calls the {@link CapturedBody} overload, override
+     *             that one instead.
+     */
+    @Deprecated
     public void buildPayload(Span span, HttpServletRequest req, HttpServletResponse res,
             byte[] req_body, byte[] res_body, Integer statusCode, String msgid) {
+        buildPayload(span, req, res, CapturedBody.of(req_body, false), CapturedBody.of(res_body, false),
+                statusCode, msgid);
+    }
+
+    public void buildPayload(Span span, HttpServletRequest req, HttpServletResponse res,
+            CapturedBody req_body, CapturedBody res_body, Integer statusCode, String msgid) {
         Enumeration<String> headerNames = req.getHeaderNames();
 
         HashMap<String, String> reqHeaders = new HashMap<>();
@@ -161,13 +640,7 @@ public class APIToolkitFilter implements Filter {
             resHeaders.put(headerName, headerValue);
         }
 
-        Map<String, String[]> paramsH = req.getParameterMap();
-        Map<String, String> params = new HashMap<>();
-        for (Map.Entry<String, String[]> entry : paramsH.entrySet()) {
-            String key = entry.getKey();
-            String[] values = entry.getValue();
-            params.put(key, String.join(", ", values));
-        }
+        Map<String, String> params = requestParams(req, req_body);
 
         String method = req.getMethod();
         String queryString = req.getQueryString() == null ? "" : "?" + req.getQueryString();
@@ -180,15 +653,7 @@ public class APIToolkitFilter implements Filter {
         @SuppressWarnings("unchecked")
         List<Map<String, Object>> errorList = (List<Map<String, Object>>) req.getAttribute("APITOOLKIT_ERRORS");
 
-        Map<String, Object> config = new HashMap<>();
-        config.put("serviceVersion", this.serviceVersion);
-        config.put("tags", this.tags);
-        config.put("debug", this.debug);
-        config.put("redactHeaders", Arrays.asList(this.redactHeaders));
-        config.put("redactRequestBody", Arrays.asList(this.redactRequestBody));
-        config.put("redactResponseBody", Arrays.asList(this.redactResponseBody));
-
-        Utils.setApitoolkitAttributesAndEndSpan(
+        ExchangeSnapshot snapshot = new ExchangeSnapshot(
                 span,
                 req.getServerName(),
                 statusCode,
@@ -203,10 +668,15 @@ public class APIToolkitFilter implements Filter {
                 req_body,
                 res_body,
                 errorList,
-                config,
-                "JavaSpringBoot",
-                null
+                this.exchangeConfig,
+                null,
+                this.payloadPipeline != null ? Instant.now() : null
         );
+        if (this.payloadPipeline != null) {
+            this.payloadPipeline.submit(snapshot);
+        } else {
+            snapshot.emit();
+        }
 
     }
 }
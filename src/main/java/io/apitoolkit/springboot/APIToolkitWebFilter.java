@@ -0,0 +1,403 @@
+package io.apitoolkit.springboot;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * WebFlux counterpart of {@link APIToolkitFilter}. Bodies are copied buffer
+ * by buffer as they flow through, up to maxCapturedBodyBytes, and the span is
+ * finished when the exchange completes, errors or is cancelled. Redaction and
+ * serialization run on a small bounded scheduler, never on the event loop.
+ */
+public class APIToolkitWebFilter implements WebFilter, InitializingBean, DisposableBean {
+
+    @Value("${apitoolkit.debug:false}")
+    private Boolean debug;
+    @Value("${apitoolkit.redactHeaders:}")
+    private String[] redactHeaders;
+    @Value("${apitoolkit.captureHeaders:}")
+    private String[] captureHeaders;
+    @Value("${apitoolkit.skipHeaders:}")
+    private String[] skipHeaders;
+    @Value("${apitoolkit.redactRequestBody:}")
+    private String[] redactRequestBody;
+    @Value("${apitoolkit.redactResponseBody:}")
+    private String[] redactResponseBody;
+    @Value("${apitoolkit.captureRequest_body:false}")
+    private Boolean captureRequestBody;
+    @Value("${apitoolkit.captureResponse_body:false}")
+    private Boolean captureResponseBody;
+    @Value("${apitoolkit.serviceName:}")
+    private String serviceName;
+    @Value("${apitoolkit.serviceVersion:}")
+    private String serviceVersion;
+    @Value("${apitoolkit.tags:}")
+    private String tags;
+    @Value("${apitoolkit.captureContentTypes:}")
+    private String[] captureContentTypes;
+    @Value("${apitoolkit.bodyEncoding:base64}")
+    private String bodyEncoding;
+    @Value("${apitoolkit.bodyCompression:none}")
+    private String bodyCompression;
+    @Value("${apitoolkit.bodyCompressionThreshold:1024}")
+    private Integer bodyCompressionThreshold;
+    @Value("${apitoolkit.bodyShapeDedup:false}")
+    private Boolean bodyShapeDedup;
+    @Value("${apitoolkit.bodyShapeRefreshSeconds:600}")
+    private Integer bodyShapeRefreshSeconds;
+    @Value("${apitoolkit.bodyShapeCacheSize:10000}")
+    private Integer bodyShapeCacheSize;
+    @Value("${apitoolkit.maxCapturedBodyBytes:-1}")
+    private Integer maxCapturedBodyBytes;
+    @Value("${apitoolkit.messageIdStrategy:random-uuid}")
+    private String messageIdStrategy;
+    @Value("${apitoolkit.includePaths:}")
+    private String[] includePaths;
+    @Value("${apitoolkit.excludePaths:}")
+    private String[] excludePaths;
+    @Value("${apitoolkit.redactionThreads:2}")
+    private Integer redactionThreads;
+    @Value("${apitoolkit.redactionQueueCapacity:2048}")
+    private Integer redactionQueueCapacity;
+    @Value("${apitoolkit.selfMetrics:true}")
+    private Boolean selfMetrics;
+    @Value("${apitoolkit.selfMetricsJmx:false}")
+    private Boolean selfMetricsJmx;
+
+    private Scheduler redactionScheduler;
+    private RedactionPlan requestBodyRedaction = RedactionPlan.EMPTY;
+    private RedactionPlan responseBodyRedaction = RedactionPlan.EMPTY;
+    // Resolved on the first request, see tracer().
+    private volatile Tracer tracer;
+    private ExchangeConfig exchangeConfig;
+    private MessageIdStrategy messageIds = MessageIdStrategy.RANDOM_UUID;
+    private PathSelector pathSelector;
+    private ContentTypePolicy contentTypePolicy = ContentTypePolicy.DEFAULT;
+    private HashMap<String, Object> exchangeAttributeConfig;
+
+    public APIToolkitWebFilter() {
+    }
+
+    // Used outside of a Spring context, keys are the same as in application.properties.
+    public APIToolkitWebFilter(Map<String, String> config) {
+        String value = config.get("apitoolkit.debug");
+        this.debug = Boolean.parseBoolean(value);
+        value = config.get("apitoolkit.redactHeaders");
+        this.redactHeaders = value != null ? value.split(",") : null;
+        value = config.get("apitoolkit.captureHeaders");
+        this.captureHeaders = value != null ? value.split(",") : null;
+        value = config.get("apitoolkit.skipHeaders");
+        this.skipHeaders = value != null ? value.split(",") : null;
+        value = config.get("apitoolkit.redactRequestBody");
+        this.redactRequestBody = value != null ? value.split(",") : null;
+        value = config.get("apitoolkit.redactResponseBody");
+        this.redactResponseBody = value != null ? value.split(",") : null;
+        this.captureRequestBody = Boolean.parseBoolean(config.get("apitoolkit.captureRequestBody"));
+        this.captureResponseBody = Boolean.parseBoolean(config.get("apitoolkit.captureResponseBody"));
+        this.serviceName = config.get("apitoolkit.serviceName");
+        this.serviceVersion = config.get("apitoolkit.serviceVersion");
+        this.tags = config.get("apitoolkit.tags");
+        value = config.get("apitoolkit.captureContentTypes");
+        this.captureContentTypes = value != null ? value.split(",") : null;
+        this.bodyEncoding = config.get("apitoolkit.bodyEncoding");
+        this.bodyCompression = config.get("apitoolkit.bodyCompression");
+        value = config.get("apitoolkit.bodyCompressionThreshold");
+        this.bodyCompressionThreshold = value != null ? Integer.parseInt(value.trim()) : null;
+        this.bodyShapeDedup = Boolean.parseBoolean(config.get("apitoolkit.bodyShapeDedup"));
+        value = config.get("apitoolkit.bodyShapeRefreshSeconds");
+        this.bodyShapeRefreshSeconds = value != null ? Integer.parseInt(value.trim()) : null;
+        value = config.get("apitoolkit.bodyShapeCacheSize");
+        this.bodyShapeCacheSize = value != null ? Integer.parseInt(value.trim()) : null;
+        value = config.get("apitoolkit.maxCapturedBodyBytes");
+        this.maxCapturedBodyBytes = value != null ? Integer.parseInt(value.trim()) : null;
+        this.messageIdStrategy = config.get("apitoolkit.messageIdStrategy");
+        value = config.get("apitoolkit.includePaths");
+        this.includePaths = value != null ? value.split(",") : null;
+        value = config.get("apitoolkit.excludePaths");
+        this.excludePaths = value != null ? value.split(",") : null;
+        value = config.get("apitoolkit.redactionThreads");
+        this.redactionThreads = value != null ? Integer.parseInt(value.trim()) : null;
+        value = config.get("apitoolkit.redactionQueueCapacity");
+        this.redactionQueueCapacity = value != null ? Integer.parseInt(value.trim()) : null;
+        value = config.get("apitoolkit.selfMetrics");
+        this.selfMetrics = value != null ? Boolean.parseBoolean(value) : null;
+        this.selfMetricsJmx = Boolean.parseBoolean(config.get("apitoolkit.selfMetricsJmx"));
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        String[] emptyList = {};
+        this.debug = this.debug != null && this.debug;
+        this.redactHeaders = this.redactHeaders != null ? this.redactHeaders : emptyList;
+        this.captureHeaders = this.captureHeaders != null ? this.captureHeaders : emptyList;
+        this.skipHeaders = this.skipHeaders != null ? this.skipHeaders : emptyList;
+        this.redactRequestBody = this.redactRequestBody != null ? this.redactRequestBody : emptyList;
+        this.redactResponseBody = this.redactResponseBody != null ? this.redactResponseBody : emptyList;
+        this.captureRequestBody = this.captureRequestBody != null && this.captureRequestBody;
+        this.captureResponseBody = this.captureResponseBody != null && this.captureResponseBody;
+        this.serviceName = this.serviceName != null ? this.serviceName : "";
+        this.serviceVersion = this.serviceVersion != null ? this.serviceVersion : "";
+        this.maxCapturedBodyBytes = this.maxCapturedBodyBytes != null ? this.maxCapturedBodyBytes : -1;
+        this.redactionThreads = this.redactionThreads != null ? this.redactionThreads : 2;
+        this.redactionQueueCapacity = this.redactionQueueCapacity != null ? this.redactionQueueCapacity : 2048;
+        this.bodyCompressionThreshold = this.bodyCompressionThreshold != null ? this.bodyCompressionThreshold : 1024;
+        this.bodyShapeDedup = this.bodyShapeDedup != null && this.bodyShapeDedup;
+        this.bodyShapeRefreshSeconds = this.bodyShapeRefreshSeconds != null ? this.bodyShapeRefreshSeconds : 600;
+        this.bodyShapeCacheSize = this.bodyShapeCacheSize != null ? this.bodyShapeCacheSize : 10000;
+        this.selfMetrics = this.selfMetrics == null || this.selfMetrics;
+        this.selfMetricsJmx = this.selfMetricsJmx != null && this.selfMetricsJmx;
+
+        this.redactionScheduler = Schedulers.newBoundedElastic(this.redactionThreads,
+                this.redactionQueueCapacity, "apitoolkit-redaction", 60, true);
+        this.requestBodyRedaction = RedactionPlan.compile(this.redactRequestBody, this.debug);
+        this.responseBodyRedaction = RedactionPlan.compile(this.redactResponseBody, this.debug);
+        if (this.selfMetricsJmx) {
+            SdkMetrics.registerJmx();
+        }
+        SdkMetrics.setTimingEnabled(this.selfMetrics || this.selfMetricsJmx);
+        this.messageIds = MessageIdStrategy.parse(this.messageIdStrategy);
+        PathSelector selector = PathSelector.parse(this.includePaths, this.excludePaths);
+        this.pathSelector = selector.selectsAll() ? null : selector;
+        this.exchangeConfig = ExchangeConfig.builder("JavaSpringBoot")
+                .serviceVersion(this.serviceVersion)
+                .tags(this.tags)
+                .debug(this.debug)
+                .redactHeaders(Arrays.asList(this.redactHeaders))
+                .captureHeaders(Arrays.asList(this.captureHeaders))
+                .skipHeaders(Arrays.asList(this.skipHeaders))
+                .requestBodyRedaction(this.requestBodyRedaction)
+                .responseBodyRedaction(this.responseBodyRedaction)
+                .textBodies("text".equalsIgnoreCase(this.bodyEncoding))
+                .bodyCompression(BodyCompression.parse(this.bodyCompression), this.bodyCompressionThreshold)
+                .bodyShapes(this.bodyShapeDedup
+                        ? new BodyShapeCache(this.bodyShapeCacheSize, this.bodyShapeRefreshSeconds) : null)
+                .build();
+        this.contentTypePolicy = ContentTypePolicy.of(this.captureContentTypes);
+        this.exchangeAttributeConfig = new HashMap<>();
+        this.exchangeAttributeConfig.put("debug", this.debug);
+        if (this.debug) {
+            System.out.println("Client initialized successfully");
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (this.redactionScheduler != null) {
+            this.redactionScheduler.dispose();
+        }
+    }
+
+    private Tracer tracer() {
+        Tracer tracer = this.tracer;
+        return tracer != null ? tracer : resolveTelemetry();
+    }
+
+    // GlobalOpenTelemetry.get() installs a no-op instance for good when
+    // nothing is registered yet, so it is not called before the first request.
+    private synchronized Tracer resolveTelemetry() {
+        if (this.tracer == null) {
+            OpenTelemetry openTelemetry = GlobalOpenTelemetry.get();
+            if (this.selfMetrics) {
+                SdkMetrics.register(openTelemetry);
+            }
+            this.tracer = openTelemetry.getTracer(this.serviceName);
+        }
+        return this.tracer;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (this.pathSelector != null
+                && !this.pathSelector.selects(exchange.getRequest().getPath().pathWithinApplication().value())) {
+            return chain.filter(exchange);
+        }
+        Span span = tracer().spanBuilder("apitoolkit-http-span").startSpan();
+
+        CaptureBuffer requestCapture = this.captureRequestBody ? new CaptureBuffer(this.maxCapturedBodyBytes) : null;
+        CaptureBuffer responseCapture = this.captureResponseBody ? new CaptureBuffer(this.maxCapturedBodyBytes) : null;
+        if (requestCapture != null) {
+            MediaType contentType = exchange.getRequest().getHeaders().getContentType();
+            requestCapture.setMetadataOnly(
+                    !this.contentTypePolicy.captures(contentType == null ? null : contentType.toString()));
+        }
+        ServerHttpRequest request = requestCapture != null
+                ? new CapturingRequest(exchange.getRequest(), requestCapture)
+                : exchange.getRequest();
+        ServerHttpResponse response = responseCapture != null
+                ? new CapturingResponse(exchange.getResponse(), responseCapture, this.contentTypePolicy)
+                : exchange.getResponse();
+
+        String msgId = this.messageIds.generate(span);
+        ErrorCollector errors = new ErrorCollector();
+        exchange.getAttributes().put("APITOOLKIT_ERRORS", errors);
+        exchange.getAttributes().put("apitoolkit_config", this.exchangeAttributeConfig);
+        exchange.getAttributes().put("apitoolkit_message_id", msgId);
+
+        ServerWebExchange observed = exchange.mutate().request(request).response(response).build();
+        return chain.filter(observed)
+                .doOnError(e -> APErrors.addError(errors, e))
+                .doFinally(signal -> finish(span, observed, requestCapture, responseCapture, msgId, errors,
+                        signal == SignalType.ON_ERROR));
+    }
+
+    private void finish(Span span, ServerWebExchange exchange, CaptureBuffer requestCapture,
+            CaptureBuffer responseCapture, String msgId, List<Map<String, Object>> errors, boolean failed) {
+        try {
+            ServerHttpRequest req = exchange.getRequest();
+            ServerHttpResponse res = exchange.getResponse();
+
+            // Errors are turned into responses by WebExceptionHandlers after the filters.
+            HttpStatusCode status = res.getStatusCode();
+            int statusCode = status != null ? status.value() : 200;
+            if (failed && statusCode < 400) {
+                statusCode = 500;
+            }
+
+            Object pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            String matchedPattern = pattern instanceof PathPattern ? ((PathPattern) pattern).getPatternString()
+                    : pattern != null ? pattern.toString() : null;
+            Map<String, String> pathVariables = exchange.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+
+            String rawQuery = req.getURI().getRawQuery();
+            String rawUrl = req.getURI().getRawPath() + (rawQuery == null ? "" : "?" + rawQuery);
+
+            ExchangeSnapshot snapshot = new ExchangeSnapshot(
+                    span,
+                    req.getURI().getHost(),
+                    statusCode,
+                    joinValues(req.getQueryParams()),
+                    pathVariables,
+                    joinValues(req.getHeaders()),
+                    joinValues(res.getHeaders()),
+                    req.getMethod().name(),
+                    rawUrl,
+                    msgId,
+                    matchedPattern,
+                    CapturedBody.from(requestCapture),
+                    CapturedBody.from(responseCapture),
+                    errors,
+                    this.exchangeConfig,
+                    null,
+                    Instant.now()
+            );
+            emit(snapshot);
+        } catch (Exception e) {
+            SdkMetrics.payloadFailed();
+            span.end();
+            if (this.debug) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void emit(ExchangeSnapshot snapshot) {
+        try {
+            this.redactionScheduler.schedule(snapshot::emit);
+        } catch (RejectedExecutionException e) {
+            // Queue is full, keep the span but skip the expensive part.
+            SdkMetrics.bodiesDropped();
+            snapshot.withoutBodies().emit();
+        }
+    }
+
+    private static Map<String, String> joinValues(MultiValueMap<String, String> values) {
+        Map<String, String> joined = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+            joined.put(entry.getKey(), String.join(", ", entry.getValue()));
+        }
+        return joined;
+    }
+
+    static void capture(CaptureBuffer capture, DataBuffer buffer) {
+        int readable = buffer.readableByteCount();
+        int copied = readable;
+        if (!capture.isMetadataOnly() && capture.getLimit() >= 0) {
+            // Only what is kept is copied, the checksum of metadata-only captures needs it all.
+            copied = Math.min(readable, Math.max(0, capture.getLimit() - capture.size()));
+        }
+        if (copied > 0) {
+            // toByteBuffer copies; readableByteBuffers() would avoid that but needs Spring 6.0.5.
+            capture.write(buffer.toByteBuffer(buffer.readPosition(), copied));
+        }
+        capture.skip(readable - copied);
+    }
+
+    private static class CapturingRequest extends ServerHttpRequestDecorator {
+
+        private final CaptureBuffer capture;
+
+        CapturingRequest(ServerHttpRequest delegate, CaptureBuffer capture) {
+            super(delegate);
+            this.capture = capture;
+        }
+
+        @Override
+        public Flux<DataBuffer> getBody() {
+            return super.getBody().doOnNext(buffer -> capture(this.capture, buffer));
+        }
+    }
+
+    private static class CapturingResponse extends ServerHttpResponseDecorator {
+
+        private final CaptureBuffer capture;
+        private final ContentTypePolicy contentTypePolicy;
+
+        CapturingResponse(ServerHttpResponse delegate, CaptureBuffer capture, ContentTypePolicy contentTypePolicy) {
+            super(delegate);
+            this.capture = capture;
+            this.contentTypePolicy = contentTypePolicy;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            applyContentTypePolicy();
+            return super.writeWith(Flux.from(body).doOnNext(buffer -> capture(this.capture, buffer)));
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            applyContentTypePolicy();
+            return super.writeAndFlushWith(Flux.from(body)
+                    .map(chunk -> Flux.from(chunk).doOnNext(buffer -> capture(this.capture, buffer))));
+        }
+
+        // Headers are final by the time the body is written.
+        private void applyContentTypePolicy() {
+            MediaType contentType = getHeaders().getContentType();
+            this.capture.setMetadataOnly(
+                    !this.contentTypePolicy.captures(contentType == null ? null : contentType.toString()));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package io.apitoolkit.springboot;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * Copies the first bytes of the request body into a {@link CaptureBuffer} as
+ * the application reads it. Nothing is read ahead of the application.
+ */
+public class BodyCaptureRequestWrapper extends HttpServletRequestWrapper {
+
+    private final CaptureBuffer capture;
+    private ServletInputStream inputStream;
+    private BufferedReader reader;
+
+    public BodyCaptureRequestWrapper(HttpServletRequest request, int maxCapturedBodyBytes) {
+        this(request, new CaptureBuffer(maxCapturedBodyBytes));
+    }
+
+    public BodyCaptureRequestWrapper(HttpServletRequest request, CaptureBuffer capture) {
+        super(request);
+        this.capture = capture;
+    }
+
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        if (this.inputStream == null) {
+            this.inputStream = new TeeInputStream(getRequest().getInputStream());
+        }
+        return this.inputStream;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+        if (this.reader == null) {
+            String encoding = getCharacterEncoding();
+            this.reader = new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding != null ? encoding : StandardCharsets.ISO_8859_1.name()));
+        }
+        return this.reader;
+    }
+
+    public CaptureBuffer getCapture() {
+        // Form bodies are usually consumed by the container while parsing
+        // parameters, so they never pass through our stream.
+        if (this.capture.getTotalBytes() == 0 && isFormPost()) {
+            writeFormParameters();
+        }
+        return this.capture;
+    }
+
+    /**
+     * Only the bytes the application read, never filled in from the parsed
+     * form parameters.
+     */
+    public CaptureBuffer getRawCapture() {
+        return this.capture;
+    }
+
+    public byte[] getContentAsByteArray() {
+        return getCapture().toByteArray();
+    }
+
+    public boolean isTruncated() {
+        return this.capture.isTruncated();
+    }
+
+    private boolean isFormPost() {
+        String contentType = getContentType();
+        return contentType != null && contentType.contains("application/x-www-form-urlencoded")
+                && "POST".equalsIgnoreCase(getMethod());
+    }
+
+    private void writeFormParameters() {
+        try {
+            String encoding = getCharacterEncoding() != null ? getCharacterEncoding() : StandardCharsets.UTF_8.name();
+            StringBuilder form = new StringBuilder();
+            for (Map.Entry<String, String[]> entry : getParameterMap().entrySet()) {
+                for (String value : entry.getValue()) {
+                    if (form.length() > 0) {
+                        form.append('&');
+                    }
+                    form.append(URLEncoder.encode(entry.getKey(), encoding));
+                    if (value != null) {
+                        form.append('=').append(URLEncoder.encode(value, encoding));
+                    }
+                }
+            }
+            byte[] bytes = form.toString().getBytes(encoding);
+            this.capture.write(bytes, 0, bytes.length);
+        } catch (UnsupportedEncodingException e) {
+            // Leave the capture empty
+        }
+    }
+
+    private class TeeInputStream extends ServletInputStream {
+
+        private final ServletInputStream is;
+
+        TeeInputStream(ServletInputStream is) {
+            this.is = is;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int ch = this.is.read();
+            if (ch != -1) {
+                capture.write(ch);
+            }
+            return ch;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = this.is.read(b, off, len);
+            if (count > 0) {
+                capture.write(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public int readLine(byte[] b, int off, int len) throws IOException {
+            int count = this.is.readLine(b, off, len);
+            if (count > 0) {
+                capture.write(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return this.is.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return this.is.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            this.is.setReadListener(readListener);
+        }
+    }
+}
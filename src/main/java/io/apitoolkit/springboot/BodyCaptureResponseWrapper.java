@@ -0,0 +1,183 @@
+package io.apitoolkit.springboot;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Streams the response straight to the client and keeps a copy of the first
+ * bytes in a {@link CaptureBuffer}. Unlike ContentCachingResponseWrapper the
+ * body is never held back until the filter finishes.
+ */
+public class BodyCaptureResponseWrapper extends HttpServletResponseWrapper {
+
+    private final CaptureBuffer capture;
+    private final ContentTypePolicy contentTypePolicy;
+    private TeeOutputStream outputStream;
+    private PrintWriter writer;
+
+    public BodyCaptureResponseWrapper(HttpServletResponse response, int maxCapturedBodyBytes) {
+        this(response, new CaptureBuffer(maxCapturedBodyBytes));
+    }
+
+    public BodyCaptureResponseWrapper(HttpServletResponse response, CaptureBuffer capture) {
+        this(response, capture, null);
+    }
+
+    /**
+     * The policy is checked against the response Content-Type when the body
+     * starts being written, non captured types are only summarized.
+     */
+    public BodyCaptureResponseWrapper(HttpServletResponse response, CaptureBuffer capture,
+            ContentTypePolicy contentTypePolicy) {
+        super(response);
+        this.capture = capture;
+        this.contentTypePolicy = contentTypePolicy;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (this.writer != null) {
+            throw new IllegalStateException("getWriter() has already been called on this response");
+        }
+        return teeStream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (this.writer == null) {
+            if (this.outputStream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called on this response");
+            }
+            this.writer = new PrintWriter(new OutputStreamWriter(teeStream(), getCharacterEncoding()));
+        }
+        return this.writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (this.writer != null) {
+            this.writer.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        discardWriter();
+        this.capture.reset();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        discardWriter();
+        this.capture.reset();
+        // The application may pick getWriter() or getOutputStream() again,
+        // with another content type.
+        this.writer = null;
+        this.outputStream = null;
+    }
+
+    // Chars still buffered in our writer belong to the output that was just
+    // reset, they are flushed into nothing.
+    private void discardWriter() {
+        if (this.writer != null) {
+            this.outputStream.discarding = true;
+            try {
+                this.writer.flush();
+            } finally {
+                this.outputStream.discarding = false;
+            }
+        }
+    }
+
+    /**
+     * Pushes anything still sitting in our writer to the client. Called by
+     * the filter once the chain has returned.
+     */
+    public void finish() {
+        if (this.writer != null) {
+            this.writer.flush();
+        }
+    }
+
+    public CaptureBuffer getCapture() {
+        return this.capture;
+    }
+
+    public byte[] getContentAsByteArray() {
+        return this.capture.toByteArray();
+    }
+
+    public boolean isTruncated() {
+        return this.capture.isTruncated();
+    }
+
+    private ServletOutputStream teeStream() throws IOException {
+        if (this.outputStream == null) {
+            if (this.contentTypePolicy != null) {
+                this.capture.setMetadataOnly(!this.contentTypePolicy.captures(getContentType()));
+            }
+            this.outputStream = new TeeOutputStream(getResponse().getOutputStream());
+        }
+        return this.outputStream;
+    }
+
+    private class TeeOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream os;
+        boolean discarding;
+
+        TeeOutputStream(ServletOutputStream os) {
+            this.os = os;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (this.discarding) {
+                return;
+            }
+            this.os.write(b);
+            capture.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (this.discarding) {
+                return;
+            }
+            this.os.write(b, off, len);
+            capture.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (this.discarding) {
+                return;
+            }
+            this.os.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.os.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return this.os.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            this.os.setWriteListener(writeListener);
+        }
+    }
+}
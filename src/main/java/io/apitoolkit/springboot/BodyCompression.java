@@ -0,0 +1,142 @@
+package io.apitoolkit.springboot;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Optional compression of captured bodies before they are Base64 encoded into
+ * the span. Bodies under the threshold, and bodies that do not get smaller,
+ * are sent as before; compressed ones carry an http.request|response.body.codec
+ * attribute naming the codec.
+ *
+ * <pre>
+ * apitoolkit.bodyCompression=none | gzip | deflate
+ * apitoolkit.bodyCompressionThreshold=1024
+ * </pre>
+ *
+ * Each thread keeps its own Deflater and output buffer for the configured
+ * codec, created on its first body, so compressing a body allocates nothing
+ * but the encoded string.
+ */
+public enum BodyCompression {
+
+    NONE(null),
+    GZIP("gzip"),
+    // zlib format (RFC 1950), what most decoders call deflate.
+    DEFLATE("deflate");
+
+    // Output buffers grown past this are dropped after use instead of being kept per thread.
+    static final int MAX_RETAINED_BUFFER = 256 * 1024;
+
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    private final String codec;
+    // Only the codec in use gets a Deflater, the other constants never touch theirs.
+    private final ThreadLocal<Workspace> workspace;
+
+    BodyCompression(String codec) {
+        this.codec = codec;
+        this.workspace = ThreadLocal.withInitial(() -> new Workspace("gzip".equals(codec)));
+    }
+
+    /**
+     * Value of the body codec attribute, null for NONE.
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * Compresses and Base64 encodes the given bytes, or returns null when
+     * compressing would not make them smaller.
+     */
+    public String compressToBase64(byte[] data) {
+        if (this == NONE) {
+            return null;
+        }
+        Workspace workspace = this.workspace.get();
+        try {
+            int length = this == GZIP ? workspace.gzip(data) : workspace.deflate(data);
+            if (length >= data.length) {
+                return null;
+            }
+            ByteBuffer encoded = Base64.getEncoder().encode(ByteBuffer.wrap(workspace.out, 0, length));
+            return new String(encoded.array(), 0, encoded.remaining(), StandardCharsets.ISO_8859_1);
+        } finally {
+            workspace.trim();
+        }
+    }
+
+    public static BodyCompression parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return NONE;
+        }
+        return BodyCompression.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+
+    private static final class Workspace {
+        // gzip wraps raw deflate data in its own header and trailer.
+        private final Deflater deflater;
+        private final CRC32 crc;
+        private byte[] out = new byte[8 * 1024];
+
+        Workspace(boolean gzip) {
+            this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, gzip);
+            this.crc = gzip ? new CRC32() : null;
+        }
+
+        int deflate(byte[] data) {
+            return compress(deflater, data, 0);
+        }
+
+        int gzip(byte[] data) {
+            System.arraycopy(GZIP_HEADER, 0, out, 0, GZIP_HEADER.length);
+            int length = compress(deflater, data, GZIP_HEADER.length);
+            crc.reset();
+            crc.update(data, 0, data.length);
+            ensureCapacity(length + GZIP_TRAILER_LENGTH);
+            writeIntLE(length, (int) crc.getValue());
+            writeIntLE(length + 4, data.length);
+            return length + GZIP_TRAILER_LENGTH;
+        }
+
+        private int compress(Deflater deflater, byte[] data, int offset) {
+            deflater.reset();
+            deflater.setInput(data, 0, data.length);
+            deflater.finish();
+            int length = offset;
+            while (!deflater.finished()) {
+                if (length == out.length) {
+                    ensureCapacity(out.length * 2);
+                }
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            return length;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > out.length) {
+                out = Arrays.copyOf(out, Math.max(capacity, out.length * 2));
+            }
+        }
+
+        private void writeIntLE(int position, int value) {
+            out[position] = (byte) value;
+            out[position + 1] = (byte) (value >>> 8);
+            out[position + 2] = (byte) (value >>> 16);
+            out[position + 3] = (byte) (value >>> 24);
+        }
+
+        void trim() {
+            if (out.length > MAX_RETAINED_BUFFER) {
+                out = new byte[8 * 1024];
+            }
+        }
+    }
+}
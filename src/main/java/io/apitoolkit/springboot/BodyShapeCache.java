@@ -0,0 +1,208 @@
+package io.apitoolkit.springboot;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Remembers which JSON body shapes were recently sent for each route, so a
+ * body is only attached in full when its shape is new for that route or was
+ * last sent more than the refresh interval ago. Other exchanges only carry
+ * the shape fingerprint.
+ *
+ * <pre>
+ * apitoolkit.bodyShapeDedup=true
+ * apitoolkit.bodyShapeRefreshSeconds=600
+ * apitoolkit.bodyShapeCacheSize=10000
+ * </pre>
+ *
+ * A shape is the set of member names and value types, independent of
+ * values, member order and array lengths. The cache is split into
+ * independently locked LRU segments.
+ */
+public final class BodyShapeCache {
+
+    // Returned by fingerprint() for bodies that are not complete JSON documents.
+    static final long NO_FINGERPRINT = 0;
+
+    private static final int SEGMENTS = 16;
+    // Deeper values are hashed as opaque, so hostile input cannot recurse forever.
+    private static final int MAX_DEPTH = 32;
+    // Distinct element shapes tracked per array, later ones are ignored.
+    private static final int MAX_ELEMENT_SHAPES = 16;
+
+    private static final long OBJECT = 0x9E3779B97F4A7C15L;
+    private static final long ARRAY = 0xC2B2AE3D27D4EB4FL;
+    private static final long STRING = 0x165667B19E3779F9L;
+    private static final long NUMBER = 0x27D4EB2F165667C5L;
+    private static final long BOOLEAN = 0x85EBCA77C2B2AE63L;
+    private static final long NULL = 0xFF51AFD7ED558CCDL;
+    private static final long OPAQUE = 0xC4CEB9FE1A85EC53L;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long refreshNanos;
+
+    public BodyShapeCache(int maxShapes, long refreshSeconds) {
+        int perSegment = Math.max(1, maxShapes / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        this.refreshNanos = TimeUnit.SECONDS.toNanos(refreshSeconds);
+    }
+
+    /**
+     * True when the body with this fingerprint should be attached in full,
+     * in which case it counts as sent from now on.
+     */
+    public boolean shouldAttach(String method, String route, boolean response, long fingerprint) {
+        return shouldAttach(method, route, response, fingerprint, System.nanoTime());
+    }
+
+    boolean shouldAttach(String method, String route, boolean response, long fingerprint, long now) {
+        long key = mix(fingerprint ^ mix(hash(method) * 31 + hash(route)) ^ (response ? ARRAY : OBJECT));
+        Segment segment = segments[(int) (key >>> 60) & (SEGMENTS - 1)];
+        synchronized (segment) {
+            Long sent = segment.get(key);
+            if (sent != null && now - sent < refreshNanos) {
+                return false;
+            }
+            segment.put(key, now);
+            return true;
+        }
+    }
+
+    /**
+     * Structural hash of a JSON object or array, {@link #NO_FINGERPRINT} for
+     * anything else, including truncated documents.
+     */
+    public static long fingerprint(byte[] body) {
+        if (!startsLikeJson(body)) {
+            return NO_FINGERPRINT;
+        }
+        try (JsonReader reader = new JsonReader(
+                new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8))) {
+            long hash = shape(reader, 0);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                return NO_FINGERPRINT;
+            }
+            return hash == NO_FINGERPRINT ? 1 : hash;
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            return NO_FINGERPRINT;
+        }
+    }
+
+    private static long shape(JsonReader reader, int depth) throws IOException {
+        JsonToken token = reader.peek();
+        if (depth >= MAX_DEPTH && (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY)) {
+            reader.skipValue();
+            return OPAQUE;
+        }
+        switch (token) {
+            case BEGIN_OBJECT: {
+                // Summing the member hashes makes the result independent of member order.
+                long members = 0;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    long name = hash(reader.nextName());
+                    members += mix(name * 31 + shape(reader, depth + 1));
+                }
+                reader.endObject();
+                return mix(OBJECT + members);
+            }
+            case BEGIN_ARRAY: {
+                // Element shapes are counted once each, so [1] and [1,2,3] have the same shape.
+                long[] seen = new long[MAX_ELEMENT_SHAPES];
+                int count = 0;
+                long elements = 0;
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    long element = shape(reader, depth + 1);
+                    if (count < seen.length && !contains(seen, count, element)) {
+                        seen[count++] = element;
+                        elements += element;
+                    }
+                }
+                reader.endArray();
+                return mix(ARRAY + elements);
+            }
+            case STRING:
+                reader.skipValue();
+                return STRING;
+            case NUMBER:
+                reader.skipValue();
+                return NUMBER;
+            case BOOLEAN:
+                reader.skipValue();
+                return BOOLEAN;
+            case NULL:
+                reader.skipValue();
+                return NULL;
+            default:
+                throw new IllegalStateException("Unexpected token " + token);
+        }
+    }
+
+    private static boolean startsLikeJson(byte[] body) {
+        for (byte b : body) {
+            if (b == '{' || b == '[') {
+                return true;
+            }
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(long[] values, int count, long value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long hash(String value) {
+        if (value == null) {
+            return 0;
+        }
+        // FNV-1a over the UTF-16 code units.
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    // SplitMix64 finalizer.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static final class Segment extends LinkedHashMap<Long, Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > capacity;
+        }
+    }
+}
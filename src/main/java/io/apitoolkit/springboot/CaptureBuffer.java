@@ -0,0 +1,178 @@
+package io.apitoolkit.springboot;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps at most {@code limit} bytes of everything written to it while still
+ * counting the full size, so callers can tell when the captured copy was
+ * truncated. A negative limit means no cap. In metadata-only mode nothing is
+ * kept, only the size and a CRC32 of the content.
+ */
+public final class CaptureBuffer extends OutputStream {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int limit;
+    private byte[] buf = EMPTY;
+    private int count;
+    private long total;
+    private CRC32 checksum;
+    // Time spent copying or checksumming, reported once per body.
+    private long captureNanos;
+
+    public CaptureBuffer(int limit) {
+        this.limit = limit;
+    }
+
+    @Override
+    public void write(int b) {
+        total++;
+        if (checksum != null) {
+            checksum.update(b);
+            return;
+        }
+        if (limit >= 0 && count >= limit) {
+            return;
+        }
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        total += len;
+        int keep = limit < 0 ? len : Math.min(len, limit - count);
+        if (checksum == null && keep <= 0) {
+            return;
+        }
+        // 0 when SdkMetrics timing is off.
+        long start = SdkMetrics.start();
+        if (checksum != null) {
+            checksum.update(b, off, len);
+        } else {
+            ensureCapacity(count + keep);
+            System.arraycopy(b, off, buf, count, keep);
+            count += keep;
+        }
+        if (start != 0) {
+            captureNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Copies the remaining bytes of {@code src} without moving its position.
+     */
+    public void write(ByteBuffer src) {
+        int len = src.remaining();
+        total += len;
+        int keep = limit < 0 ? len : Math.min(len, limit - count);
+        if (checksum == null && keep <= 0) {
+            return;
+        }
+        long start = SdkMetrics.start();
+        if (checksum != null) {
+            checksum.update(src.duplicate());
+        } else {
+            ensureCapacity(count + keep);
+            src.duplicate().get(buf, count, keep);
+            count += keep;
+        }
+        if (start != 0) {
+            captureNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Counts {@code len} more bytes without being handed them, for callers
+     * that stop copying once the capture is full. Metadata-only captures need
+     * every byte for the checksum and must be written to instead.
+     */
+    public void skip(long len) {
+        if (len > 0) {
+            total += len;
+        }
+    }
+
+    /**
+     * Switches between keeping the bytes and only summarizing them. Call
+     * before anything is written.
+     */
+    public void setMetadataOnly(boolean metadataOnly) {
+        if (metadataOnly && checksum == null) {
+            checksum = new CRC32();
+        } else if (!metadataOnly) {
+            checksum = null;
+        }
+    }
+
+    public boolean isMetadataOnly() {
+        return checksum != null;
+    }
+
+    /**
+     * CRC32 of everything written in metadata-only mode, -1 otherwise.
+     */
+    public long getChecksum() {
+        return checksum != null ? checksum.getValue() : -1;
+    }
+
+    public boolean isTruncated() {
+        return checksum == null && total > count;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long getTotalBytes() {
+        return total;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Forgets the captured bytes but keeps the backing array for reuse.
+     */
+    public void reset() {
+        count = 0;
+        total = 0;
+        captureNanos = 0;
+        if (checksum != null) {
+            checksum.reset();
+        }
+    }
+
+    /**
+     * Time spent in write() since the last call, however many chunks the
+     * body arrived in.
+     */
+    long takeCaptureNanos() {
+        long nanos = captureNanos;
+        captureNanos = 0;
+        return nanos;
+    }
+
+    int capacity() {
+        return buf.length;
+    }
+
+    public byte[] toByteArray() {
+        return count == 0 ? EMPTY : Arrays.copyOf(buf, count);
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= buf.length) {
+            return;
+        }
+        int capacity = Math.max(Math.max(buf.length * 2, 256), minCapacity);
+        if (limit >= 0) {
+            capacity = Math.min(capacity, limit);
+        }
+        buf = Arrays.copyOf(buf, capacity);
+    }
+}
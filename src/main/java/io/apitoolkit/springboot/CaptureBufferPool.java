@@ -0,0 +1,46 @@
+package io.apitoolkit.springboot;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recycles {@link CaptureBuffer}s between requests. Buffers that grew past
+ * {@code maxRetainedBytes} are left to the garbage collector so one large
+ * upload does not pin memory forever.
+ */
+public class CaptureBufferPool {
+
+    private final int limit;
+    private final int maxPooled;
+    private final int maxRetainedBytes;
+    private final ConcurrentLinkedQueue<CaptureBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    public CaptureBufferPool(int limit, int maxPooled, int maxRetainedBytes) {
+        this.limit = limit;
+        this.maxPooled = maxPooled;
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    public CaptureBuffer acquire() {
+        CaptureBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return new CaptureBuffer(limit);
+        }
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    public void release(CaptureBuffer buffer) {
+        if (buffer == null || buffer.getLimit() != limit || buffer.capacity() > maxRetainedBytes) {
+            return;
+        }
+        buffer.reset();
+        buffer.setMetadataOnly(false);
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            return;
+        }
+        buffers.offer(buffer);
+    }
+}
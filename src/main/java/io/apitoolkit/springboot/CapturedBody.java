@@ -0,0 +1,77 @@
+package io.apitoolkit.springboot;
+
+/**
+ * A request or response body as handed to
+ * {@link Utils#setApitoolkitAttributesAndEndSpan}: either the captured bytes
+ * (possibly truncated) or, for content types that are not captured, only
+ * its size and CRC32.
+ */
+public final class CapturedBody {
+
+    private static final byte[] NO_BYTES = new byte[0];
+
+    public static final CapturedBody EMPTY = new CapturedBody(NO_BYTES, false, false, 0, -1);
+
+    private final byte[] bytes;
+    private final boolean truncated;
+    private final boolean metadataOnly;
+    private final long size;
+    private final long checksum;
+
+    private CapturedBody(byte[] bytes, boolean truncated, boolean metadataOnly, long size, long checksum) {
+        this.bytes = bytes;
+        this.truncated = truncated;
+        this.metadataOnly = metadataOnly;
+        this.size = size;
+        this.checksum = checksum;
+    }
+
+    public static CapturedBody of(byte[] bytes, boolean truncated) {
+        if (bytes == null || (bytes.length == 0 && !truncated)) {
+            return EMPTY;
+        }
+        return new CapturedBody(bytes, truncated, false, bytes.length, -1);
+    }
+
+    /**
+     * @param size     total size in bytes, -1 when unknown.
+     * @param checksum CRC32 of the content, -1 when it was not computed.
+     */
+    public static CapturedBody metadata(long size, long checksum) {
+        return new CapturedBody(NO_BYTES, false, true, size, checksum);
+    }
+
+    public static CapturedBody from(CaptureBuffer buffer) {
+        if (buffer == null) {
+            return EMPTY;
+        }
+        if (buffer.getTotalBytes() > 0) {
+            SdkMetrics.recordNanos(SdkMetrics.Phase.CAPTURE, buffer.takeCaptureNanos());
+        }
+        if (buffer.isMetadataOnly()) {
+            return metadata(buffer.getTotalBytes(), buffer.getChecksum());
+        }
+        SdkMetrics.captured(buffer.size(), buffer.getTotalBytes() - buffer.size());
+        return of(buffer.toByteArray(), buffer.isTruncated());
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public boolean isMetadataOnly() {
+        return metadataOnly;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+}
@@ -0,0 +1,110 @@
+package io.apitoolkit.springboot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decides from the Content-Type, before anything is buffered, whether a body
+ * is captured as is or only summarized (size and CRC32). Images, archives,
+ * protobuf and multipart uploads are summarized by default.
+ *
+ * <pre>
+ * apitoolkit.captureContentTypes=application/json,application/*+json,text/*
+ * </pre>
+ *
+ * Entries are full media types, {@code type/*} or {@code type/*+suffix}.
+ * Bodies without a Content-Type are captured.
+ */
+public final class ContentTypePolicy {
+
+    public static final List<String> DEFAULT_CONTENT_TYPES = Arrays.asList(
+            "application/json",
+            "application/*+json",
+            "application/xml",
+            "application/*+xml",
+            "application/x-www-form-urlencoded",
+            "application/graphql",
+            "application/javascript",
+            "text/*");
+
+    public static final ContentTypePolicy DEFAULT = new ContentTypePolicy(DEFAULT_CONTENT_TYPES);
+
+    private final String[] exact;
+    private final String[] typePrefixes;
+    // Parallel to typePrefixes, null for plain type/* entries.
+    private final String[] suffixes;
+
+    private ContentTypePolicy(List<String> contentTypes) {
+        List<String> exact = new ArrayList<>();
+        List<String> typePrefixes = new ArrayList<>();
+        List<String> suffixes = new ArrayList<>();
+        for (String entry : contentTypes) {
+            String type = entry == null ? "" : entry.trim().toLowerCase(Locale.ROOT);
+            if (type.isEmpty()) {
+                continue;
+            }
+            int star = type.indexOf("/*");
+            if (star < 0) {
+                exact.add(type);
+            } else if (type.length() == star + 2) {
+                typePrefixes.add(type.substring(0, star + 1));
+                suffixes.add(null);
+            } else if (type.charAt(star + 2) == '+') {
+                // application/*+json matches application/vnd.api+json
+                typePrefixes.add(type.substring(0, star + 1));
+                suffixes.add(type.substring(star + 2));
+            } else {
+                throw new IllegalArgumentException("Invalid apitoolkit.captureContentTypes entry: " + entry);
+            }
+        }
+        this.exact = exact.toArray(new String[0]);
+        this.typePrefixes = typePrefixes.toArray(new String[0]);
+        this.suffixes = suffixes.toArray(new String[0]);
+    }
+
+    /**
+     * Policy for the configured list, {@link #DEFAULT} when it is empty.
+     */
+    public static ContentTypePolicy of(List<String> contentTypes) {
+        if (contentTypes == null) {
+            return DEFAULT;
+        }
+        for (String type : contentTypes) {
+            if (type != null && !type.trim().isEmpty()) {
+                return new ContentTypePolicy(contentTypes);
+            }
+        }
+        return DEFAULT;
+    }
+
+    public static ContentTypePolicy of(String[] contentTypes) {
+        return of(contentTypes == null ? null : Arrays.asList(contentTypes));
+    }
+
+    /**
+     * True when a body with this Content-Type header value should be kept.
+     */
+    public boolean captures(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        int end = contentType.indexOf(';');
+        String type = (end < 0 ? contentType : contentType.substring(0, end)).trim().toLowerCase(Locale.ROOT);
+        if (type.isEmpty()) {
+            return true;
+        }
+        for (String candidate : exact) {
+            if (candidate.equals(type)) {
+                return true;
+            }
+        }
+        for (int i = 0; i < typePrefixes.length; i++) {
+            if (type.startsWith(typePrefixes[i]) && (suffixes[i] == null || type.endsWith(suffixes[i]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
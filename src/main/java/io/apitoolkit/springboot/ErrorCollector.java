@@ -0,0 +1,106 @@
+package io.apitoolkit.springboot;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Errors reported for one request, safe to add to from any thread without
+ * locking: slots are claimed with a single atomic increment and published
+ * with a volatile write. Repeats of an error already collected (same
+ * fingerprint) only increment its "count"; once every slot is taken further
+ * distinct errors are dropped and counted.
+ *
+ * Bound to the request as the APITOOLKIT_ERRORS attribute and to the
+ * OpenTelemetry context, see {@link APErrors#reportError(Throwable)}.
+ */
+public final class ErrorCollector extends AbstractList<Map<String, Object>> {
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicInteger claimed = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+
+    public ErrorCollector() {
+        this(APErrors.MAX_ERRORS_PER_REQUEST);
+    }
+
+    public ErrorCollector(int capacity) {
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Returns false when the error was dropped because the collector is full.
+     * Two threads adding the same new error at once may both get a slot.
+     */
+    @Override
+    public boolean add(Map<String, Object> error) {
+        Object fingerprint = error.get("fingerprint");
+        if (fingerprint != null) {
+            int published = Math.min(claimed.get(), slots.length());
+            for (int i = 0; i < published; i++) {
+                Entry entry = slots.get(i);
+                if (entry != null && fingerprint.equals(entry.fingerprint)) {
+                    entry.count.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+        int index = claimed.getAndIncrement();
+        if (index >= slots.length()) {
+            dropped.incrementAndGet();
+            SdkMetrics.errorDropped();
+            return false;
+        }
+        slots.set(index, new Entry(error, fingerprint));
+        return true;
+    }
+
+    /**
+     * Errors published so far, a slot still being written ends the list.
+     */
+    @Override
+    public int size() {
+        int claimed = Math.min(this.claimed.get(), slots.length());
+        for (int i = 0; i < claimed; i++) {
+            if (slots.get(i) == null) {
+                return i;
+            }
+        }
+        return claimed;
+    }
+
+    @Override
+    public Map<String, Object> get(int index) {
+        Entry entry = index < slots.length() ? slots.get(index) : null;
+        if (entry == null) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        int count = entry.count.get();
+        if (count == 1) {
+            return entry.error;
+        }
+        Map<String, Object> error = new HashMap<>(entry.error);
+        error.put("count", count);
+        return error;
+    }
+
+    /**
+     * Distinct errors that did not fit.
+     */
+    public int getDropped() {
+        return dropped.get();
+    }
+
+    private static final class Entry {
+        final Map<String, Object> error;
+        final Object fingerprint;
+        final AtomicInteger count = new AtomicInteger(1);
+
+        Entry(Map<String, Object> error, Object fingerprint) {
+            this.error = error;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package io.apitoolkit.springboot;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+
+/**
+ * Settings shared by every exchange of one filter or integration, built once
+ * at startup. The attributes that never change between requests are encoded
+ * up front and applied to each span with a single setAllAttributes call.
+ */
+public final class ExchangeConfig {
+
+    static final AttributeKey<String> SDK_TYPE = AttributeKey.stringKey("apitoolkit.sdk_type");
+    static final AttributeKey<String> SERVICE_VERSION = AttributeKey.stringKey("apitoolkit.service_version");
+    static final AttributeKey<String> TAGS = AttributeKey.stringKey("apitoolkit.tags");
+    static final AttributeKey<String> BODY_ENCODING = AttributeKey.stringKey("apitoolkit.body_encoding");
+
+    private static final Gson GSON = new Gson();
+
+    private final boolean debug;
+    private final List<String> redactHeaders;
+    private final HeaderAttributes headers;
+    private final RedactionPlan requestBodyRedaction;
+    private final RedactionPlan responseBodyRedaction;
+    private final boolean textBodies;
+    private final BodyCompression bodyCompression;
+    private final int bodyCompressionThreshold;
+    private final BodyShapeCache bodyShapes;
+    private final Attributes staticAttributes;
+
+    private ExchangeConfig(Builder builder) {
+        this.debug = builder.debug;
+        this.redactHeaders = builder.redactHeaders == null ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(builder.redactHeaders);
+        this.headers = new HeaderAttributes(builder.redactHeaders, builder.captureHeaders, builder.skipHeaders);
+        this.requestBodyRedaction = builder.requestBodyRedaction == null ? RedactionPlan.EMPTY
+                : builder.requestBodyRedaction;
+        this.responseBodyRedaction = builder.responseBodyRedaction == null ? RedactionPlan.EMPTY
+                : builder.responseBodyRedaction;
+        this.textBodies = builder.textBodies;
+        this.bodyCompression = builder.bodyCompression == null ? BodyCompression.NONE : builder.bodyCompression;
+        this.bodyCompressionThreshold = builder.bodyCompressionThreshold;
+        this.bodyShapes = builder.bodyShapes;
+        this.staticAttributes = Attributes.builder()
+                .put(SDK_TYPE, builder.sdkType)
+                .put(SERVICE_VERSION, builder.serviceVersion)
+                .put(TAGS, GSON.toJson(builder.tags))
+                .put(BODY_ENCODING, builder.textBodies ? "text" : null)
+                .build();
+    }
+
+    public static Builder builder(String sdkType) {
+        return new Builder(sdkType);
+    }
+
+    /**
+     * Reads the legacy config map passed to
+     * {@link Utils#setApitoolkitAttributesAndEndSpan}.
+     */
+    @SuppressWarnings("unchecked")
+    static ExchangeConfig fromMap(Map<String, Object> config, String sdkType) {
+        boolean debug = Boolean.TRUE.equals(config.get("debug"));
+        Object tags = config.containsKey("tags") ? config.get("tags") : Collections.emptyList();
+        return builder(sdkType)
+                .serviceVersion((String) config.getOrDefault("serviceVersion", ""))
+                .tags(tags)
+                .debug(debug)
+                .redactHeaders((List<String>) config.get("redactHeaders"))
+                .requestBodyRedaction(Utils.redactionPlan(config.get("redactRequestBody"), debug))
+                .responseBodyRedaction(Utils.redactionPlan(config.get("redactResponseBody"), debug))
+                .build();
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    public List<String> getRedactHeaders() {
+        return redactHeaders;
+    }
+
+    public boolean isTextBodies() {
+        return textBodies;
+    }
+
+    public BodyCompression getBodyCompression() {
+        return bodyCompression;
+    }
+
+    public int getBodyCompressionThreshold() {
+        return bodyCompressionThreshold;
+    }
+
+    public BodyShapeCache getBodyShapes() {
+        return bodyShapes;
+    }
+
+    public HeaderAttributes getHeaders() {
+        return headers;
+    }
+
+    public RedactionPlan getRequestBodyRedaction() {
+        return requestBodyRedaction;
+    }
+
+    public RedactionPlan getResponseBodyRedaction() {
+        return responseBodyRedaction;
+    }
+
+    public Attributes getStaticAttributes() {
+        return staticAttributes;
+    }
+
+    public static final class Builder {
+        private final String sdkType;
+        private String serviceVersion = "";
+        private Object tags = Collections.emptyList();
+        private boolean debug;
+        private List<String> redactHeaders;
+        private List<String> captureHeaders;
+        private List<String> skipHeaders;
+        private RedactionPlan requestBodyRedaction;
+        private RedactionPlan responseBodyRedaction;
+        private boolean textBodies;
+        private BodyCompression bodyCompression;
+        private int bodyCompressionThreshold;
+        private BodyShapeCache bodyShapes;
+
+        private Builder(String sdkType) {
+            this.sdkType = sdkType;
+        }
+
+        public Builder serviceVersion(String serviceVersion) {
+            this.serviceVersion = serviceVersion;
+            return this;
+        }
+
+        /**
+         * Serialized to JSON as is, usually the comma separated
+         * apitoolkit.tags value or a list of tags.
+         */
+        public Builder tags(Object tags) {
+            this.tags = tags;
+            return this;
+        }
+
+        public Builder debug(boolean debug) {
+            this.debug = debug;
+            return this;
+        }
+
+        public Builder redactHeaders(List<String> redactHeaders) {
+            this.redactHeaders = redactHeaders;
+            return this;
+        }
+
+        /**
+         * Only these headers are recorded, all when empty.
+         */
+        public Builder captureHeaders(List<String> captureHeaders) {
+            this.captureHeaders = captureHeaders;
+            return this;
+        }
+
+        /**
+         * Headers that are never recorded.
+         */
+        public Builder skipHeaders(List<String> skipHeaders) {
+            this.skipHeaders = skipHeaders;
+            return this;
+        }
+
+        public Builder requestBodyRedaction(RedactionPlan requestBodyRedaction) {
+            this.requestBodyRedaction = requestBodyRedaction;
+            return this;
+        }
+
+        public Builder responseBodyRedaction(RedactionPlan responseBodyRedaction) {
+            this.responseBodyRedaction = responseBodyRedaction;
+            return this;
+        }
+
+        /**
+         * Send captured bodies as UTF-8 text instead of Base64.
+         */
+        public Builder textBodies(boolean textBodies) {
+            this.textBodies = textBodies;
+            return this;
+        }
+
+        /**
+         * Codec for bodies of at least {@code threshold} bytes.
+         */
+        public Builder bodyCompression(BodyCompression bodyCompression, int threshold) {
+            this.bodyCompression = bodyCompression;
+            this.bodyCompressionThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * JSON bodies whose shape was recently sent for the route are
+         * replaced by their fingerprint, null to always send them.
+         */
+        public Builder bodyShapes(BodyShapeCache bodyShapes) {
+            this.bodyShapes = bodyShapes;
+            return this;
+        }
+
+        public ExchangeConfig build() {
+            return new ExchangeConfig(this);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package io.apitoolkit.springboot;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.opentelemetry.api.trace.Span;
+
+/**
+ * Everything {@link Utils#setApitoolkitAttributesAndEndSpan} needs, copied
+ * off the servlet objects so the attributes can be built on another thread
+ * after the request has been recycled by the container.
+ */
+public final class ExchangeSnapshot {
+
+    private final Span span;
+    private final String host;
+    private final int statusCode;
+    private final Map<String, String> queryParams;
+    private final Map<String, String> pathParams;
+    private final Map<String, String> reqHeaders;
+    private final Map<String, String> respHeaders;
+    private final String method;
+    private final String rawUrl;
+    private final String msgId;
+    private final String urlPath;
+    private final CapturedBody reqBody;
+    private final CapturedBody respBody;
+    private final List<Map<String, Object>> errors;
+    private final ExchangeConfig config;
+    private final String parentId;
+    private final Instant endTimestamp;
+
+    public ExchangeSnapshot(
+            Span span,
+            String host,
+            int statusCode,
+            Map<String, String> queryParams,
+            Map<String, String> pathParams,
+            Map<String, String> reqHeaders,
+            Map<String, String> respHeaders,
+            String method,
+            String rawUrl,
+            String msgId,
+            String urlPath,
+            CapturedBody reqBody,
+            CapturedBody respBody,
+            List<Map<String, Object>> errors,
+            ExchangeConfig config,
+            String parentId,
+            Instant endTimestamp) {
+        this.span = span;
+        this.host = host;
+        this.statusCode = statusCode;
+        this.queryParams = queryParams;
+        this.pathParams = pathParams == null ? null : new HashMap<>(pathParams);
+        this.reqHeaders = reqHeaders;
+        this.respHeaders = respHeaders;
+        this.method = method;
+        this.rawUrl = rawUrl;
+        this.msgId = msgId;
+        this.urlPath = urlPath;
+        this.reqBody = reqBody;
+        this.respBody = respBody;
+        this.errors = errors == null ? Collections.<Map<String, Object>>emptyList() : new ArrayList<>(errors);
+        this.config = config;
+        this.parentId = parentId;
+        this.endTimestamp = endTimestamp;
+    }
+
+    public Span getSpan() {
+        return span;
+    }
+
+    /**
+     * Same exchange with both bodies left out, used when the payload queue
+     * is full and the span has to be emitted cheaply on the caller's thread.
+     */
+    public ExchangeSnapshot withoutBodies() {
+        return new ExchangeSnapshot(span, host, statusCode, queryParams, pathParams, reqHeaders, respHeaders,
+                method, rawUrl, msgId, urlPath, CapturedBody.EMPTY, CapturedBody.EMPTY, errors, config, parentId,
+                endTimestamp);
+    }
+
+    /**
+     * Ends the span without any payload attribute, used when the payload is
+     * dropped because the queue is full.
+     */
+    public void endWithoutPayload() {
+        if (endTimestamp != null) {
+            span.end(endTimestamp);
+        } else {
+            span.end();
+        }
+    }
+
+    public void emit() {
+        Utils.setApitoolkitAttributesAndEndSpan(
+                span,
+                host,
+                statusCode,
+                queryParams,
+                pathParams,
+                reqHeaders,
+                respHeaders,
+                method,
+                rawUrl,
+                msgId,
+                urlPath,
+                reqBody,
+                respBody,
+                errors,
+                config,
+                parentId,
+                endTimestamp);
+    }
+}
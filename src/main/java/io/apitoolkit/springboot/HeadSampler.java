@@ -0,0 +1,143 @@
+package io.apitoolkit.springboot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.web.servlet.HandlerMapping;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Decides at the top of the filter whether a request is captured at all.
+ * Rules are checked in the order they were configured and the first match
+ * wins; requests matching no rule use the global ratio.
+ *
+ * <pre>
+ * apitoolkit.sampleRate=0.5
+ * apitoolkit.routeSampleRates=/api/search=0.01:50,/users/{id}=0.2,/admin/**=1
+ * </pre>
+ *
+ * The optional {@code :n} suffix caps captured requests for that route to n
+ * per second.
+ */
+public class HeadSampler {
+
+    private final double sampleRate;
+    private final Rule[] rules;
+
+    public HeadSampler(double sampleRate, Rule[] rules) {
+        this.sampleRate = sampleRate;
+        this.rules = rules;
+    }
+
+    public static HeadSampler parse(double sampleRate, String routeSampleRates) {
+        List<Rule> rules = new ArrayList<>();
+        if (routeSampleRates != null) {
+            for (String entry : routeSampleRates.split(",")) {
+                if (entry.trim().isEmpty()) {
+                    continue;
+                }
+                int eq = entry.lastIndexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Invalid apitoolkit.routeSampleRates entry: " + entry);
+                }
+                String[] rate = entry.substring(eq + 1).trim().split(":");
+                double ratio = Double.parseDouble(rate[0].trim());
+                int maxPerSecond = rate.length > 1 ? Integer.parseInt(rate[1].trim()) : -1;
+                rules.add(new Rule(RoutePattern.compile(entry.substring(0, eq)), ratio, maxPerSecond));
+            }
+        }
+        return new HeadSampler(sampleRate, rules.toArray(new Rule[0]));
+    }
+
+    /**
+     * True when nothing would ever be dropped, so the filter can skip the
+     * sampler entirely.
+     */
+    public boolean isSampleAll() {
+        return sampleRate >= 1.0 && rules.length == 0;
+    }
+
+    public boolean sample(HttpServletRequest req) {
+        if (rules.length > 0) {
+            String uri = req.getRequestURI();
+            int offset = contextPathLength(req, uri);
+            String bestMatchingPattern = (String) req.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            for (Rule rule : rules) {
+                if (rule.pattern.matches(uri, offset, bestMatchingPattern)) {
+                    return rule.sample();
+                }
+            }
+        }
+        return sample(sampleRate);
+    }
+
+    // Rules match the URI after the context path, which is skipped by
+    // offset rather than cut off, this runs for every request.
+    static int contextPathLength(HttpServletRequest req, String uri) {
+        String contextPath = req.getContextPath();
+        return contextPath != null && uri.startsWith(contextPath) ? contextPath.length() : 0;
+    }
+
+    static boolean sample(double ratio) {
+        if (ratio >= 1.0) {
+            return true;
+        }
+        return ratio > 0 && ThreadLocalRandom.current().nextDouble() < ratio;
+    }
+
+    public static final class Rule {
+        private final RoutePattern pattern;
+        private final double ratio;
+        private final TokenBucket bucket;
+
+        Rule(RoutePattern pattern, double ratio, int maxPerSecond) {
+            this.pattern = pattern;
+            this.ratio = ratio;
+            this.bucket = maxPerSecond >= 0 ? new TokenBucket(maxPerSecond) : null;
+        }
+
+        boolean sample() {
+            return HeadSampler.sample(ratio) && (bucket == null || bucket.tryAcquire());
+        }
+    }
+
+    /**
+     * Lock-free rate limiter (GCRA): a single CAS on the theoretical arrival
+     * time of the next request, with a burst of up to one second of permits.
+     */
+    static final class TokenBucket {
+        private final long intervalNanos;
+        private final long burstNanos;
+        private final AtomicLong nextFree = new AtomicLong(Long.MIN_VALUE);
+
+        TokenBucket(int permitsPerSecond) {
+            this.intervalNanos = permitsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / permitsPerSecond : -1;
+            this.burstNanos = TimeUnit.SECONDS.toNanos(1);
+        }
+
+        boolean tryAcquire() {
+            return tryAcquire(System.nanoTime());
+        }
+
+        boolean tryAcquire(long now) {
+            if (intervalNanos < 0) {
+                return false;
+            }
+            while (true) {
+                long current = nextFree.get();
+                long start = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+                long next = start + intervalNanos;
+                if (next - now > burstNanos) {
+                    return false;
+                }
+                if (nextFree.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package io.apitoolkit.springboot;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.opentelemetry.api.common.AttributeKey;
+
+/**
+ * Per header name decisions (attribute keys, redact, skip), computed the
+ * first time a name is seen and cached, so recording headers costs one map
+ * lookup per header. Redaction and the allow/deny lists ignore case.
+ *
+ * <pre>
+ * apitoolkit.redactHeaders=authorization,cookie
+ * apitoolkit.captureHeaders=content-type,user-agent,x-request-id
+ * apitoolkit.skipHeaders=accept-language,sec-ch-ua
+ * </pre>
+ *
+ * An empty captureHeaders list captures every header not in skipHeaders.
+ */
+public final class HeaderAttributes {
+
+    // Header names are client controlled, stop caching past this many.
+    static final int MAX_CACHED_NAMES = 1024;
+
+    private final Set<String> redact;
+    private final Set<String> capture;
+    private final Set<String> skip;
+    private final ConcurrentHashMap<String, Header> cache = new ConcurrentHashMap<>();
+
+    public HeaderAttributes(List<String> redactHeaders, List<String> captureHeaders, List<String> skipHeaders) {
+        this.redact = lowerCase(redactHeaders);
+        this.capture = lowerCase(captureHeaders);
+        this.skip = lowerCase(skipHeaders);
+    }
+
+    public Header get(String name) {
+        Header header = cache.get(name);
+        if (header == null) {
+            header = create(name);
+            if (cache.size() < MAX_CACHED_NAMES) {
+                cache.putIfAbsent(name, header);
+            }
+        }
+        return header;
+    }
+
+    int cachedNames() {
+        return cache.size();
+    }
+
+    private Header create(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        boolean skipped = skip.contains(lower) || (!capture.isEmpty() && !capture.contains(lower));
+        return new Header(name, redact.contains(lower), skipped);
+    }
+
+    private static Set<String> lowerCase(List<String> names) {
+        Set<String> set = new HashSet<>();
+        if (names != null) {
+            for (String name : names) {
+                if (name != null && !name.trim().isEmpty()) {
+                    set.add(name.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return set;
+    }
+
+    public static final class Header {
+        private final AttributeKey<String> requestKey;
+        private final AttributeKey<String> responseKey;
+        private final boolean redacted;
+        private final boolean skipped;
+
+        Header(String name, boolean redacted, boolean skipped) {
+            this.requestKey = AttributeKey.stringKey("http.request.header." + name);
+            this.responseKey = AttributeKey.stringKey("http.response.header." + name);
+            this.redacted = redacted;
+            this.skipped = skipped;
+        }
+
+        public AttributeKey<String> getRequestKey() {
+            return requestKey;
+        }
+
+        public AttributeKey<String> getResponseKey() {
+            return responseKey;
+        }
+
+        public boolean isRedacted() {
+            return redacted;
+        }
+
+        public boolean isSkipped() {
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package io.apitoolkit.springboot;
+
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+
+/**
+ * How apitoolkit.msg_id is generated for each inbound request. Every strategy
+ * produces a UUID string, so ids stay interchangeable with the parent ids
+ * propagated by the outgoing integrations.
+ *
+ * <pre>
+ * apitoolkit.messageIdStrategy=random-uuid | fast-random | time-ordered | span-id
+ * </pre>
+ */
+public enum MessageIdStrategy {
+
+    // UUID.randomUUID(), backed by a shared SecureRandom.
+    RANDOM_UUID {
+        @Override
+        public String generate(Span span) {
+            return UUID.randomUUID().toString();
+        }
+    },
+
+    // Version 4 UUID from ThreadLocalRandom: no locking, no entropy pool.
+    FAST_RANDOM {
+        @Override
+        public String generate(Span span) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long msb = (random.nextLong() & ~0xF000L) | 0x4000L;
+            long lsb = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+            return new UUID(msb, lsb).toString();
+        }
+    },
+
+    // Version 7 UUID: millisecond timestamp followed by random bits, so ids
+    // sort by arrival time.
+    TIME_ORDERED {
+        @Override
+        public String generate(Span span) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long msb = (System.currentTimeMillis() << 16) | 0x7000L | (random.nextInt() & 0x0FFF);
+            long lsb = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+            return new UUID(msb, lsb).toString();
+        }
+    },
+
+    // Built from the request span's trace and span ids, no randomness at
+    // all. Falls back to FAST_RANDOM when the span is not recorded yet (tail
+    // sampling) or comes from a no-op tracer.
+    SPAN_ID {
+        @Override
+        public String generate(Span span) {
+            SpanContext context = span == null ? null : span.getSpanContext();
+            if (context == null || !context.isValid()) {
+                return FAST_RANDOM.generate(span);
+            }
+            long msb = Long.parseUnsignedLong(context.getTraceId().substring(16), 16);
+            long lsb = Long.parseUnsignedLong(context.getSpanId(), 16);
+            // Version 8 (custom) with the RFC 4122 variant.
+            msb = (msb & ~0xF000L) | 0x8000L;
+            lsb = (lsb & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+            return new UUID(msb, lsb).toString();
+        }
+    };
+
+    public abstract String generate(Span span);
+
+    public static MessageIdStrategy parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return RANDOM_UUID;
+        }
+        return MessageIdStrategy.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+}
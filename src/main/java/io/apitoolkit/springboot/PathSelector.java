@@ -0,0 +1,164 @@
+package io.apitoolkit.springboot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decides, before anything is wrapped or allocated, whether a request path is
+ * instrumented at all. Requests that are not pass straight through the chain.
+ *
+ * <pre>
+ * apitoolkit.excludePaths=/actuator,/static/**,/assets/*.css
+ * apitoolkit.includePaths=/api/**
+ * </pre>
+ *
+ * Literal prefixes are matched segment-wise through a character trie walked
+ * over the request URI in place; Ant-style patterns are checked afterwards.
+ * When includePaths is set only matching paths are instrumented, and
+ * excludePaths always wins.
+ */
+final class PathSelector {
+
+    static final PathSelector ALL = new PathSelector(new Matcher(), new Matcher());
+
+    private final Matcher include;
+    private final Matcher exclude;
+
+    private PathSelector(Matcher include, Matcher exclude) {
+        this.include = include;
+        this.exclude = exclude;
+    }
+
+    static PathSelector parse(String[] includePaths, String[] excludePaths) {
+        Matcher include = Matcher.compile(includePaths);
+        Matcher exclude = Matcher.compile(excludePaths);
+        if (include.isEmpty() && exclude.isEmpty()) {
+            return ALL;
+        }
+        return new PathSelector(include, exclude);
+    }
+
+    /**
+     * True when every path is instrumented, so callers can skip the check.
+     */
+    boolean selectsAll() {
+        return include.isEmpty() && exclude.isEmpty();
+    }
+
+    /**
+     * @param uri    request URI without the query string.
+     * @param offset length of the context path to skip.
+     */
+    boolean selects(String uri, int offset) {
+        if (!exclude.isEmpty() && exclude.matches(uri, offset)) {
+            return false;
+        }
+        return include.isEmpty() || include.matches(uri, offset);
+    }
+
+    boolean selects(String path) {
+        return selects(path, 0);
+    }
+
+    private static final class Matcher {
+        private final Node prefixes = new Node();
+        private final List<RoutePattern> patterns = new ArrayList<>();
+        private boolean empty = true;
+
+        static Matcher compile(String[] paths) {
+            Matcher matcher = new Matcher();
+            if (paths != null) {
+                for (String path : paths) {
+                    if (path != null && !path.trim().isEmpty()) {
+                        matcher.add(RoutePattern.compile(path));
+                    }
+                }
+            }
+            return matcher;
+        }
+
+        private void add(RoutePattern pattern) {
+            empty = false;
+            if (pattern.getPrefix() == null) {
+                patterns.add(pattern);
+                return;
+            }
+            Node node = prefixes;
+            String prefix = pattern.getPrefix();
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.childOrCreate(prefix.charAt(i));
+            }
+            node.terminal = true;
+        }
+
+        boolean isEmpty() {
+            return empty;
+        }
+
+        boolean matches(String uri, int offset) {
+            if (matchesPrefix(uri, offset)) {
+                return true;
+            }
+            if (patterns.isEmpty()) {
+                return false;
+            }
+            String path = offset == 0 ? uri : uri.substring(offset);
+            for (RoutePattern pattern : patterns) {
+                if (pattern.matches(path, null)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // A prefix matches whole segments only: /actuator matches /actuator
+        // and /actuator/health but not /actuators.
+        private boolean matchesPrefix(String uri, int offset) {
+            Node node = prefixes;
+            if (node.terminal) {
+                return true;
+            }
+            int length = uri.length();
+            for (int i = offset; i < length; i++) {
+                node = node.child(uri.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+                if (node.terminal && (i + 1 == length || uri.charAt(i + 1) == '/')) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean terminal;
+
+        Node child(char c) {
+            char[] keys = this.keys;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node childOrCreate(char c) {
+            Node child = child(c);
+            if (child == null) {
+                int n = keys.length;
+                keys = Arrays.copyOf(keys, n + 1);
+                children = Arrays.copyOf(children, n + 1);
+                keys[n] = c;
+                child = new Node();
+                children[n] = child;
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package io.apitoolkit.springboot;
+
+import java.lang.invoke.VarHandle;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Builds span payloads off the request thread. Snapshots go through a
+ * bounded lock-free ring buffer drained by a few daemon workers. Idle
+ * workers park until a submit wakes one, and callers blocked on a full queue
+ * park until a worker makes room, so nothing polls.
+ */
+public class PayloadPipeline {
+
+    public enum OverflowPolicy {
+        // Lose the whole payload, the span is ended without attributes.
+        DROP_NEWEST,
+        // Emit the span on the caller's thread without request/response bodies.
+        DROP_BODIES,
+        // Wait for the workers to make room.
+        BLOCK;
+
+        public static OverflowPolicy parse(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return DROP_NEWEST;
+            }
+            return OverflowPolicy.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private final RingBuffer queue;
+    private final OverflowPolicy overflowPolicy;
+    private final Thread[] workers;
+    // 1 while the worker is parked or about to park, cleared by whoever wakes it.
+    private final AtomicIntegerArray idle;
+    // Callers of submit() waiting for room under the BLOCK policy.
+    private final ConcurrentLinkedQueue<Thread> blockedCallers = new ConcurrentLinkedQueue<>();
+    private final boolean debug;
+    private volatile boolean running = true;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder bodiesDropped = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+
+    public PayloadPipeline(int capacity, int workerCount, OverflowPolicy overflowPolicy, boolean debug) {
+        this.queue = new RingBuffer(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.debug = debug;
+        this.workers = new Thread[Math.max(1, workerCount)];
+        this.idle = new AtomicIntegerArray(this.workers.length);
+        for (int i = 0; i < this.workers.length; i++) {
+            final int index = i;
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain(index);
+                }
+            }, "apitoolkit-payload-" + i);
+            worker.setDaemon(true);
+            this.workers[i] = worker;
+            worker.start();
+        }
+    }
+
+    public void submit(ExchangeSnapshot snapshot) {
+        if (!running) {
+            emit(snapshot);
+            return;
+        }
+        if (queue.offer(snapshot)) {
+            wakeWorker();
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK:
+                blocked.increment();
+                Thread caller = Thread.currentThread();
+                blockedCallers.add(caller);
+                try {
+                    while (true) {
+                        // Registered before retrying, a worker polling after
+                        // this failed offer is bound to see us and unpark.
+                        VarHandle.fullFence();
+                        if (queue.offer(snapshot)) {
+                            break;
+                        }
+                        if (!running) {
+                            emit(snapshot);
+                            return;
+                        }
+                        LockSupport.park(this);
+                    }
+                } finally {
+                    blockedCallers.remove(caller);
+                }
+                wakeWorker();
+                break;
+            case DROP_BODIES:
+                bodiesDropped.increment();
+                SdkMetrics.bodiesDropped();
+                emit(snapshot.withoutBodies());
+                break;
+            default:
+                // Ended bare rather than left open, so span processors and
+                // anything holding the context see it finish.
+                dropped.increment();
+                SdkMetrics.payloadDropped();
+                snapshot.endWithoutPayload();
+        }
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getBodiesDroppedCount() {
+        return bodiesDropped.sum();
+    }
+
+    public long getBlockedCount() {
+        return blocked.sum();
+    }
+
+    /**
+     * Stops the workers once the queued payloads have been emitted.
+     */
+    public void shutdown(long timeoutMillis) {
+        running = false;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Thread caller : blockedCallers) {
+            LockSupport.unpark(caller);
+        }
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+            try {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void drain(int index) {
+        while (true) {
+            ExchangeSnapshot snapshot = queue.poll();
+            if (snapshot == null) {
+                // Flag first, then look again: a submit that lands after the
+                // second poll sees the flag and unparks us.
+                idle.set(index, 1);
+                snapshot = queue.poll();
+                if (snapshot == null) {
+                    if (!running) {
+                        return;
+                    }
+                    LockSupport.park(this);
+                    idle.set(index, 0);
+                    continue;
+                }
+                idle.set(index, 0);
+            }
+            wakeBlockedCallers();
+            emit(snapshot);
+        }
+    }
+
+    private void wakeWorker() {
+        // The offer's release store must not be reordered after the reads of
+        // the idle flags.
+        VarHandle.fullFence();
+        for (int i = 0; i < workers.length; i++) {
+            if (idle.get(i) == 1 && idle.compareAndSet(i, 1, 0)) {
+                LockSupport.unpark(workers[i]);
+                return;
+            }
+        }
+    }
+
+    private void wakeBlockedCallers() {
+        if (overflowPolicy != OverflowPolicy.BLOCK) {
+            return;
+        }
+        VarHandle.fullFence();
+        // Rare, every waiter retries rather than risking one never being woken.
+        for (Thread caller : blockedCallers) {
+            LockSupport.unpark(caller);
+        }
+    }
+
+    private void emit(ExchangeSnapshot snapshot) {
+        try {
+            snapshot.emit();
+        } catch (Exception e) {
+            SdkMetrics.payloadFailed();
+            if (debug) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Bounded multi-producer multi-consumer queue (Vyukov). Each slot carries a
+     * sequence number telling producers and consumers whose turn it is, so
+     * offer and poll only ever CAS a position counter.
+     */
+    static final class RingBuffer {
+        private final int mask;
+        private final AtomicReferenceArray<ExchangeSnapshot> slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong enqueuePosition = new AtomicLong();
+        private final AtomicLong dequeuePosition = new AtomicLong();
+
+        RingBuffer(int requestedCapacity) {
+            int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+            this.mask = capacity - 1;
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                this.sequences.set(i, i);
+            }
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        boolean offer(ExchangeSnapshot snapshot) {
+            while (true) {
+                long position = enqueuePosition.get();
+                int index = (int) (position & mask);
+                long difference = sequences.get(index) - position;
+                if (difference == 0) {
+                    if (enqueuePosition.compareAndSet(position, position + 1)) {
+                        slots.lazySet(index, snapshot);
+                        sequences.lazySet(index, position + 1);
+                        return true;
+                    }
+                } else if (difference < 0) {
+                    return false;
+                }
+            }
+        }
+
+        ExchangeSnapshot poll() {
+            while (true) {
+                long position = dequeuePosition.get();
+                int index = (int) (position & mask);
+                long difference = sequences.get(index) - (position + 1);
+                if (difference == 0) {
+                    if (dequeuePosition.compareAndSet(position, position + 1)) {
+                        ExchangeSnapshot snapshot = slots.get(index);
+                        slots.lazySet(index, null);
+                        sequences.lazySet(index, position + mask + 1);
+                        return snapshot;
+                    }
+                } else if (difference < 0) {
+                    return null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package io.apitoolkit.springboot;
+
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * Where the filter takes http.request.query_params from.
+ *
+ * <pre>
+ * apitoolkit.queryParamMode=parameter-map | query-string
+ * </pre>
+ *
+ * parameter-map (the default) uses getParameterMap(), which makes the
+ * container parse form bodies even when nothing else needed them.
+ * query-string tokenizes getQueryString() in place, decoding only the names
+ * and values that contain escapes, and adds form parameters from the
+ * captured request body when body capture is on.
+ */
+final class QueryParams {
+
+    enum Mode {
+        PARAMETER_MAP,
+        QUERY_STRING;
+
+        static Mode parse(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return PARAMETER_MAP;
+            }
+            return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private static final String FORM = "application/x-www-form-urlencoded";
+
+    // Repeated names are joined like the values of getParameterMap().
+    private static final BiFunction<String, String, String> JOIN = (first, second) -> first + ", " + second;
+
+    private QueryParams() {
+    }
+
+    static Map<String, String> parse(String query, Charset charset) {
+        Map<String, String> params = new HashMap<>();
+        if (query != null) {
+            parseInto(params, query, charset);
+        }
+        return params;
+    }
+
+    static boolean isForm(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int end = contentType.indexOf(';');
+        return FORM.equalsIgnoreCase((end < 0 ? contentType : contentType.substring(0, end)).trim());
+    }
+
+    /**
+     * The request's character encoding, UTF-8 when it is missing or the JVM
+     * does not know it.
+     */
+    static Charset charset(String encoding) {
+        if (encoding != null) {
+            try {
+                return Charset.forName(encoding.trim());
+            } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                // Sent by the client, fall through.
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Adds the parameters of an application/x-www-form-urlencoded string.
+     * Pairs without '=' get an empty value, pairs without a name are skipped.
+     */
+    static void parseInto(Map<String, String> params, String encoded, Charset charset) {
+        int length = encoded.length();
+        int start = 0;
+        while (start < length) {
+            int end = encoded.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            int eq = encoded.indexOf('=', start);
+            if (eq < 0 || eq > end) {
+                eq = end;
+            }
+            if (eq > start) {
+                String name = decode(encoded, start, eq, charset);
+                String value = eq < end ? decode(encoded, eq + 1, end, charset) : "";
+                params.merge(name, value, JOIN);
+            }
+            start = end + 1;
+        }
+    }
+
+    private static String decode(String encoded, int from, int to, Charset charset) {
+        for (int i = from; i < to; i++) {
+            char c = encoded.charAt(i);
+            if (c == '%' || c == '+') {
+                String raw = encoded.substring(from, to);
+                try {
+                    return URLDecoder.decode(raw, charset);
+                } catch (IllegalArgumentException e) {
+                    // Malformed escape, keep it as sent.
+                    return raw;
+                }
+            }
+        }
+        return encoded.substring(from, to);
+    }
+}
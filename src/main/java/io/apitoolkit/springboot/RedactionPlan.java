@@ -0,0 +1,147 @@
+package io.apitoolkit.springboot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.Option;
+
+/**
+ * Immutable set of compiled JsonPath expressions used to redact a body.
+ * Compile once (at filter init or when an integration is constructed) and
+ * reuse across requests. When every path is a plain member/index/wildcard
+ * path the body is redacted in a single streaming pass, otherwise the
+ * JsonPath engine is used.
+ */
+public final class RedactionPlan {
+
+    public static final String REDACTED = "[CLIENT_REDACTED]";
+
+    public static final RedactionPlan EMPTY = new RedactionPlan(Collections.<JsonPath>emptyList(), null);
+
+    private static final Configuration CONFIGURATION = Configuration.defaultConfiguration()
+            .addOptions(Option.SUPPRESS_EXCEPTIONS);
+
+    private final List<JsonPath> paths;
+    private final StreamingRedactor streaming;
+
+    private RedactionPlan(List<JsonPath> paths, StreamingRedactor streaming) {
+        this.paths = paths;
+        this.streaming = streaming;
+    }
+
+    public static RedactionPlan compile(List<String> jsonPaths) {
+        return compile(jsonPaths, false);
+    }
+
+    public static RedactionPlan compile(String[] jsonPaths, Boolean debug) {
+        return jsonPaths == null ? EMPTY : compile(Arrays.asList(jsonPaths), debug);
+    }
+
+    public static RedactionPlan compile(List<String> jsonPaths, Boolean debug) {
+        if (jsonPaths == null || jsonPaths.isEmpty()) {
+            return EMPTY;
+        }
+        List<JsonPath> compiled = new ArrayList<>();
+        List<String> valid = new ArrayList<>();
+        for (String path : jsonPaths) {
+            if (path == null || path.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                compiled.add(JsonPath.compile(path.trim()));
+                valid.add(path.trim());
+            } catch (Exception e) {
+                if (debug != null && debug) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        if (compiled.isEmpty()) {
+            return EMPTY;
+        }
+        return new RedactionPlan(Collections.unmodifiableList(compiled), StreamingRedactor.compile(valid));
+    }
+
+    public boolean isEmpty() {
+        return paths.isEmpty();
+    }
+
+    public boolean isStreaming() {
+        return streaming != null;
+    }
+
+    /**
+     * Returns the redacted body, or {@code data} itself when nothing matched
+     * or the body is not JSON.
+     */
+    public byte[] apply(byte[] data, boolean debug) {
+        return apply(data, false, debug);
+    }
+
+    /**
+     * Like {@link #apply(byte[], boolean)} for a body that was cut off at the
+     * capture limit. Only the streaming engine can redact a partial document,
+     * the JsonPath engine drops it instead of leaking unredacted fields.
+     */
+    public byte[] apply(byte[] data, boolean truncated, boolean debug) {
+        if (paths.isEmpty() || data == null || data.length == 0 || !looksLikeJson(data)) {
+            return data;
+        }
+        if (truncated && streaming == null) {
+            return new byte[0];
+        }
+        if (streaming != null) {
+            try {
+                return streaming.redact(data, truncated);
+            } catch (Exception e) {
+                SdkMetrics.redactionFailed();
+                if (debug) {
+                    e.printStackTrace();
+                }
+                return data;
+            }
+        }
+        try {
+            Object document = CONFIGURATION.jsonProvider().parse(new String(data, StandardCharsets.UTF_8));
+            boolean changed = false;
+            for (JsonPath path : paths) {
+                try {
+                    // With SUPPRESS_EXCEPTIONS set() returns null when the path matched nothing.
+                    if (path.set(document, REDACTED, CONFIGURATION) != null) {
+                        changed = true;
+                    }
+                } catch (Exception e) {
+                    SdkMetrics.redactionFailed();
+                    if (debug) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            if (!changed) {
+                return data;
+            }
+            return CONFIGURATION.jsonProvider().toJson(document).getBytes(StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            SdkMetrics.redactionFailed();
+            if (debug) {
+                e.printStackTrace();
+            }
+            return data;
+        }
+    }
+
+    private static boolean looksLikeJson(byte[] data) {
+        for (byte b : data) {
+            if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                continue;
+            }
+            return b == '{' || b == '[';
+        }
+        return false;
+    }
+}
@@ -0,0 +1,208 @@
+package io.apitoolkit.springboot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.ObservableDoubleMeasurement;
+import io.opentelemetry.api.metrics.ObservableLongMeasurement;
+
+/**
+ * Request rate, errors and duration per (route, method, status class),
+ * recorded for every request the filter sees, including unsampled and
+ * excluded ones, so dashboards stay exact however aggressively payloads are
+ * sampled.
+ *
+ * <pre>
+ * apitoolkit.routeMetrics=true
+ * </pre>
+ *
+ * Each cell keeps a count, a duration sum and a count per duration bucket in
+ * {@link LongAdder}s, updated without locks. The cells are read, never
+ * reset, when the OpenTelemetry meter collects: apitoolkit.http.server.requests,
+ * apitoolkit.http.server.duration and apitoolkit.http.server.duration.bucket
+ * (an "le" attribute in seconds, like apitoolkit.sdk.duration.bucket) are all
+ * cumulative, so any number of readers see the same values and quantiles can
+ * be computed after aggregating across instances.
+ */
+public final class RouteMetrics {
+
+    // Routes past this many share one "_OTHER" route, matched patterns are
+    // bounded but a misconfigured app could still produce many.
+    static final int MAX_ROUTES = 1000;
+    static final String OTHER = "_OTHER";
+
+    private static final String[] METHODS = { "GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS", "TRACE",
+            OTHER };
+    private static final String[] STATUS_CLASSES = { "1xx", "2xx", "3xx", "4xx", "5xx" };
+
+    // Upper bounds of the duration buckets, the last bucket is unbounded.
+    static final long[] BUCKET_BOUNDS_MICROS = { 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000,
+            1000000, 2500000, 5000000, 10000000 };
+
+    private static final AttributeKey<String> ROUTE = AttributeKey.stringKey("http.route");
+    private static final AttributeKey<String> METHOD = AttributeKey.stringKey("http.request.method");
+    private static final AttributeKey<String> STATUS_CLASS = AttributeKey.stringKey("http.response.status_class");
+    private static final AttributeKey<String> LE = AttributeKey.stringKey("le");
+
+    private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<>();
+    private final AtomicInteger routeCount = new AtomicInteger();
+
+    /**
+     * @param route matched route pattern, null or empty when no handler
+     *              matched.
+     */
+    public void record(String route, String method, int statusCode, long durationNanos) {
+        route(route == null ? "" : route).cell(methodIndex(method), statusClass(statusCode))
+                .record(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+    }
+
+    /**
+     * Registers the instruments with the meter provider of
+     * {@code openTelemetry}; the metric reader's interval is the flush
+     * interval.
+     */
+    public void register(OpenTelemetry openTelemetry) {
+        Meter meter = openTelemetry.getMeter("io.apitoolkit.springboot");
+        ObservableLongMeasurement requests = meter.counterBuilder("apitoolkit.http.server.requests")
+                .setDescription("Requests by route, method and status class")
+                .buildObserver();
+        ObservableDoubleMeasurement duration = meter.counterBuilder("apitoolkit.http.server.duration")
+                .ofDoubles().setUnit("s")
+                .setDescription("Total time spent serving requests")
+                .buildObserver();
+        ObservableLongMeasurement buckets = meter.counterBuilder("apitoolkit.http.server.duration.bucket")
+                .setDescription("Requests that took at most le seconds")
+                .buildObserver();
+        meter.batchCallback(() -> collect(requests, duration, buckets), requests, duration, buckets);
+    }
+
+    private void collect(ObservableLongMeasurement requests, ObservableDoubleMeasurement duration,
+            ObservableLongMeasurement buckets) {
+        for (Cell cell : cells()) {
+            requests.record(cell.count.sum(), cell.attributes);
+            duration.record(cell.sumMicros.sum() / 1e6, cell.attributes);
+            long[] cumulative = cell.cumulativeBuckets();
+            for (int i = 0; i < cumulative.length; i++) {
+                buckets.record(cumulative[i], cell.bucketAttributes[i]);
+            }
+        }
+    }
+
+    List<Cell> cells() {
+        List<Cell> cells = new ArrayList<>();
+        for (Route route : routes.values()) {
+            for (int i = 0; i < route.cells.length(); i++) {
+                Cell cell = route.cells.get(i);
+                if (cell != null) {
+                    cells.add(cell);
+                }
+            }
+        }
+        return cells;
+    }
+
+    Cell cell(String route, String method, int statusCode) {
+        Route cells = routes.get(route == null ? "" : route);
+        return cells == null ? null : cells.cells.get(methodIndex(method) * STATUS_CLASSES.length
+                + statusClass(statusCode));
+    }
+
+    private Route route(String name) {
+        Route route = routes.get(name);
+        if (route != null) {
+            return route;
+        }
+        if (routeCount.get() >= MAX_ROUTES) {
+            return routes.computeIfAbsent(OTHER, Route::new);
+        }
+        return routes.computeIfAbsent(name, key -> {
+            routeCount.incrementAndGet();
+            return new Route(key);
+        });
+    }
+
+    private static int methodIndex(String method) {
+        if (method != null) {
+            for (int i = 0; i < METHODS.length - 1; i++) {
+                if (METHODS[i].equals(method)) {
+                    return i;
+                }
+            }
+        }
+        return METHODS.length - 1;
+    }
+
+    private static int statusClass(int statusCode) {
+        return Math.min(Math.max(statusCode / 100, 1), 5) - 1;
+    }
+
+    private static final class Route {
+        final String name;
+        final AtomicReferenceArray<Cell> cells = new AtomicReferenceArray<>(METHODS.length * STATUS_CLASSES.length);
+
+        Route(String name) {
+            this.name = name;
+        }
+
+        Cell cell(int method, int statusClass) {
+            int index = method * STATUS_CLASSES.length + statusClass;
+            Cell cell = cells.get(index);
+            if (cell == null) {
+                cells.compareAndSet(index, null, new Cell(name, METHODS[method], STATUS_CLASSES[statusClass]));
+                cell = cells.get(index);
+            }
+            return cell;
+        }
+    }
+
+    static final class Cell {
+        final LongAdder count = new LongAdder();
+        final LongAdder sumMicros = new LongAdder();
+        private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MICROS.length + 1];
+        final Attributes attributes;
+        final Attributes[] bucketAttributes = new Attributes[buckets.length];
+
+        Cell(String route, String method, String statusClass) {
+            this.attributes = route.isEmpty()
+                    ? Attributes.of(METHOD, method, STATUS_CLASS, statusClass)
+                    : Attributes.of(ROUTE, route, METHOD, method, STATUS_CLASS, statusClass);
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+                String le = i < BUCKET_BOUNDS_MICROS.length ? String.valueOf(BUCKET_BOUNDS_MICROS[i] / 1e6) : "+Inf";
+                bucketAttributes[i] = attributes.toBuilder().put(LE, le).build();
+            }
+        }
+
+        void record(long micros) {
+            count.increment();
+            sumMicros.add(micros);
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MICROS.length && micros > BUCKET_BOUNDS_MICROS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+        }
+
+        /**
+         * Requests at or under each bucket bound, the last entry counts all.
+         */
+        long[] cumulativeBuckets() {
+            long[] cumulative = new long[buckets.length];
+            long total = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                total += buckets[i].sum();
+                cumulative[i] = total;
+            }
+            return cumulative;
+        }
+    }
+}
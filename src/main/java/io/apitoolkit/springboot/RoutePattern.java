@@ -0,0 +1,78 @@
+package io.apitoolkit.springboot;
+
+import org.springframework.util.AntPathMatcher;
+
+/**
+ * A configured route: either a literal path prefix ({@code /actuator},
+ * {@code /static/**}) matched segment-wise without allocating, or an
+ * Ant-style pattern ({@code /users/{id}/orders}, {@code /assets/*.css}).
+ */
+final class RoutePattern {
+
+    private static final AntPathMatcher ANT_MATCHER = new AntPathMatcher();
+
+    private final String pattern;
+    private final String prefix;
+
+    private RoutePattern(String pattern, String prefix) {
+        this.pattern = pattern;
+        this.prefix = prefix;
+    }
+
+    static RoutePattern compile(String pattern) {
+        String p = pattern.trim();
+        String literal = p.endsWith("/**") ? p.substring(0, p.length() - 3) : p;
+        if (isLiteral(literal)) {
+            while (literal.endsWith("/")) {
+                literal = literal.substring(0, literal.length() - 1);
+            }
+            return new RoutePattern(p, literal);
+        }
+        return new RoutePattern(p, null);
+    }
+
+    String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Literal prefix of the pattern, or null for Ant-style patterns.
+     */
+    String getPrefix() {
+        return prefix;
+    }
+
+    boolean matches(String path, String bestMatchingPattern) {
+        return matches(path, 0, bestMatchingPattern);
+    }
+
+    /**
+     * Matches the part of {@code uri} from {@code offset} on, only Ant-style
+     * patterns copy it out.
+     */
+    boolean matches(String uri, int offset, String bestMatchingPattern) {
+        if (bestMatchingPattern != null && pattern.equals(bestMatchingPattern)) {
+            return true;
+        }
+        if (prefix != null) {
+            return matchesPrefix(prefix, uri, offset);
+        }
+        return ANT_MATCHER.match(pattern, offset == 0 ? uri : uri.substring(offset));
+    }
+
+    static boolean matchesPrefix(String prefix, String path) {
+        return matchesPrefix(prefix, path, 0);
+    }
+
+    static boolean matchesPrefix(String prefix, String uri, int offset) {
+        if (!uri.startsWith(prefix, offset)) {
+            return false;
+        }
+        int end = offset + prefix.length();
+        return uri.length() == end || prefix.isEmpty() || uri.charAt(end) == '/';
+    }
+
+    private static boolean isLiteral(String p) {
+        return p.indexOf('*') < 0 && p.indexOf('?') < 0 && p.indexOf('{') < 0;
+    }
+}
@@ -0,0 +1,385 @@
+package io.apitoolkit.springboot;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MXBean;
+import javax.management.ObjectName;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.Meter;
+
+/**
+ * The SDK's own overhead: time spent per phase, bytes captured and cut off,
+ * redaction failures and dropped payloads, process-wide.
+ *
+ * <pre>
+ * apitoolkit.selfMetrics=true
+ * apitoolkit.selfMetricsJmx=false
+ * </pre>
+ *
+ * Recording only touches {@link LongAdder}s, which stripe under contention,
+ * so request threads never wait on each other here. The values are read
+ * when the OpenTelemetry meter collects, through asynchronous instruments
+ * under apitoolkit.sdk.*, and optionally as an MXBean. The OpenTelemetry API
+ * has no asynchronous histogram, so phase durations are exported as a sum,
+ * a count and cumulative bucket counts (apitoolkit.sdk.duration.bucket with
+ * an "le" attribute in seconds). With both selfMetrics and selfMetricsJmx
+ * off the phases are not timed at all, not even System.nanoTime() is read.
+ */
+public final class SdkMetrics {
+
+    public enum Phase {
+        // Copying body bytes into capture buffers, once per body.
+        CAPTURE,
+        // Applying redactRequestBody / redactResponseBody.
+        REDACTION,
+        // Compressing and base64 or text encoding bodies.
+        ENCODING,
+        // Setting span attributes and ending the span.
+        ATTRIBUTES,
+        // Building the payload when the servlet filter finishes a request.
+        FILTER,
+        // The Apache HttpClient request and response interceptors.
+        CLIENT;
+
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    static final String OBJECT_NAME = "io.apitoolkit.springboot:type=SdkMetrics";
+
+    // Upper bounds of the duration buckets, the last bucket is unbounded.
+    private static final long[] BUCKET_BOUNDS_NANOS = {
+            TimeUnit.MICROSECONDS.toNanos(1), TimeUnit.MICROSECONDS.toNanos(10),
+            TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(1),
+            TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(100) };
+
+    private static final AttributeKey<String> PHASE = AttributeKey.stringKey("apitoolkit.sdk.phase");
+    private static final AttributeKey<String> LE = AttributeKey.stringKey("le");
+
+    private static final Timer[] TIMERS = new Timer[Phase.values().length];
+    static {
+        for (Phase phase : Phase.values()) {
+            TIMERS[phase.ordinal()] = new Timer(phase);
+        }
+    }
+
+    private static final LongAdder BYTES_CAPTURED = new LongAdder();
+    private static final LongAdder BYTES_TRUNCATED = new LongAdder();
+    private static final LongAdder REDACTION_FAILURES = new LongAdder();
+    private static final LongAdder PAYLOADS_DROPPED = new LongAdder();
+    private static final LongAdder BODIES_DROPPED = new LongAdder();
+    private static final LongAdder PAYLOADS_FAILED = new LongAdder();
+    private static final LongAdder ERRORS_DROPPED = new LongAdder();
+
+    private static volatile boolean timing = true;
+
+    private static final AtomicBoolean REGISTERED = new AtomicBoolean();
+    private static final AtomicBoolean JMX_REGISTERED = new AtomicBoolean();
+
+    private SdkMetrics() {
+    }
+
+    /**
+     * Turns the phase timers on or off for the whole process, the filters
+     * turn them off when nothing exports them.
+     */
+    public static void setTimingEnabled(boolean enabled) {
+        timing = enabled;
+    }
+
+    public static boolean isTimingEnabled() {
+        return timing;
+    }
+
+    /**
+     * Start of a timed phase to pass to {@link #record}, 0 without reading the
+     * clock when timing is off.
+     */
+    public static long start() {
+        return timing ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time since {@code startNanos}, taken from {@link #start()}.
+     */
+    public static void record(Phase phase, long startNanos) {
+        if (timing) {
+            TIMERS[phase.ordinal()].record(System.nanoTime() - startNanos);
+        }
+    }
+
+    static void recordNanos(Phase phase, long elapsedNanos) {
+        if (timing) {
+            TIMERS[phase.ordinal()].record(elapsedNanos);
+        }
+    }
+
+    static void captured(long kept, long cutOff) {
+        if (kept > 0) {
+            BYTES_CAPTURED.add(kept);
+        }
+        if (cutOff > 0) {
+            BYTES_TRUNCATED.add(cutOff);
+        }
+    }
+
+    static void redactionFailed() {
+        REDACTION_FAILURES.increment();
+    }
+
+    static void payloadDropped() {
+        PAYLOADS_DROPPED.increment();
+    }
+
+    static void bodiesDropped() {
+        BODIES_DROPPED.increment();
+    }
+
+    static void payloadFailed() {
+        PAYLOADS_FAILED.increment();
+    }
+
+    static void errorDropped() {
+        ERRORS_DROPPED.increment();
+    }
+
+    /**
+     * Registers the asynchronous instruments with the meter provider of
+     * {@code openTelemetry}. Only the first call has an effect.
+     */
+    public static void register(OpenTelemetry openTelemetry) {
+        if (!REGISTERED.compareAndSet(false, true)) {
+            return;
+        }
+        Meter meter = openTelemetry.getMeter("io.apitoolkit.springboot");
+        meter.counterBuilder("apitoolkit.sdk.duration").ofDoubles().setUnit("s")
+                .setDescription("Time spent in the SDK, by phase")
+                .buildWithCallback(measurement -> {
+                    for (Timer timer : TIMERS) {
+                        measurement.record(timer.nanos.sum() / 1e9, timer.attributes);
+                    }
+                });
+        meter.counterBuilder("apitoolkit.sdk.operations")
+                .setDescription("Number of times each phase ran")
+                .buildWithCallback(measurement -> {
+                    for (Timer timer : TIMERS) {
+                        measurement.record(timer.count.sum(), timer.attributes);
+                    }
+                });
+        meter.counterBuilder("apitoolkit.sdk.duration.bucket")
+                .setDescription("Phase runs that took at most le seconds")
+                .buildWithCallback(measurement -> {
+                    for (Timer timer : TIMERS) {
+                        long cumulative = 0;
+                        for (int i = 0; i < timer.buckets.length; i++) {
+                            cumulative += timer.buckets[i].sum();
+                            measurement.record(cumulative, timer.bucketAttributes[i]);
+                        }
+                    }
+                });
+        meter.counterBuilder("apitoolkit.sdk.body.captured").setUnit("By")
+                .setDescription("Body bytes kept for spans")
+                .buildWithCallback(measurement -> measurement.record(BYTES_CAPTURED.sum()));
+        meter.counterBuilder("apitoolkit.sdk.body.truncated").setUnit("By")
+                .setDescription("Body bytes beyond maxCapturedBodyBytes that were not kept")
+                .buildWithCallback(measurement -> measurement.record(BYTES_TRUNCATED.sum()));
+        meter.counterBuilder("apitoolkit.sdk.redaction.failures")
+                .setDescription("Bodies or paths that could not be redacted")
+                .buildWithCallback(measurement -> measurement.record(REDACTION_FAILURES.sum()));
+        meter.counterBuilder("apitoolkit.sdk.payloads.dropped")
+                .setDescription("Payloads dropped because the async queue was full")
+                .buildWithCallback(measurement -> measurement.record(PAYLOADS_DROPPED.sum()));
+        meter.counterBuilder("apitoolkit.sdk.bodies.dropped")
+                .setDescription("Payloads emitted without bodies because the async queue was full")
+                .buildWithCallback(measurement -> measurement.record(BODIES_DROPPED.sum()));
+        meter.counterBuilder("apitoolkit.sdk.payloads.failed")
+                .setDescription("Payloads that failed to build")
+                .buildWithCallback(measurement -> measurement.record(PAYLOADS_FAILED.sum()));
+        meter.counterBuilder("apitoolkit.sdk.errors.dropped")
+                .setDescription("Distinct errors over the per-request limit")
+                .buildWithCallback(measurement -> measurement.record(ERRORS_DROPPED.sum()));
+    }
+
+    /**
+     * Registers the {@link View} MXBean with the platform MBean server. Only
+     * the first call has an effect.
+     */
+    public static void registerJmx() {
+        if (!JMX_REGISTERED.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new JmxView(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by another copy of the SDK in the same JVM.
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static long getTotalNanos(Phase phase) {
+        return TIMERS[phase.ordinal()].nanos.sum();
+    }
+
+    public static long getCount(Phase phase) {
+        return TIMERS[phase.ordinal()].count.sum();
+    }
+
+    public static long getBytesCaptured() {
+        return BYTES_CAPTURED.sum();
+    }
+
+    public static long getBytesTruncated() {
+        return BYTES_TRUNCATED.sum();
+    }
+
+    public static long getRedactionFailures() {
+        return REDACTION_FAILURES.sum();
+    }
+
+    public static long getPayloadsDropped() {
+        return PAYLOADS_DROPPED.sum();
+    }
+
+    public static long getBodiesDropped() {
+        return BODIES_DROPPED.sum();
+    }
+
+    public static long getPayloadsFailed() {
+        return PAYLOADS_FAILED.sum();
+    }
+
+    public static long getErrorsDropped() {
+        return ERRORS_DROPPED.sum();
+    }
+
+    private static final class Timer {
+        final LongAdder nanos = new LongAdder();
+        final LongAdder count = new LongAdder();
+        final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_NANOS.length + 1];
+        final Attributes attributes;
+        final Attributes[] bucketAttributes = new Attributes[buckets.length];
+
+        Timer(Phase phase) {
+            this.attributes = Attributes.of(PHASE, phase.label);
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+                String le = i < BUCKET_BOUNDS_NANOS.length ? String.valueOf(BUCKET_BOUNDS_NANOS[i] / 1e9) : "+Inf";
+                bucketAttributes[i] = Attributes.of(PHASE, phase.label, LE, le);
+            }
+        }
+
+        void record(long elapsedNanos) {
+            nanos.add(elapsedNanos);
+            count.increment();
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_NANOS.length && elapsedNanos > BUCKET_BOUNDS_NANOS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+        }
+    }
+
+    @MXBean
+    public interface View {
+        long getCaptureNanos();
+
+        long getRedactionNanos();
+
+        long getEncodingNanos();
+
+        long getAttributesNanos();
+
+        long getFilterNanos();
+
+        long getClientNanos();
+
+        long getBytesCaptured();
+
+        long getBytesTruncated();
+
+        long getRedactionFailures();
+
+        long getPayloadsDropped();
+
+        long getBodiesDropped();
+
+        long getPayloadsFailed();
+
+        long getErrorsDropped();
+    }
+
+    private static final class JmxView implements View {
+        @Override
+        public long getCaptureNanos() {
+            return getTotalNanos(Phase.CAPTURE);
+        }
+
+        @Override
+        public long getRedactionNanos() {
+            return getTotalNanos(Phase.REDACTION);
+        }
+
+        @Override
+        public long getEncodingNanos() {
+            return getTotalNanos(Phase.ENCODING);
+        }
+
+        @Override
+        public long getAttributesNanos() {
+            return getTotalNanos(Phase.ATTRIBUTES);
+        }
+
+        @Override
+        public long getFilterNanos() {
+            return getTotalNanos(Phase.FILTER);
+        }
+
+        @Override
+        public long getClientNanos() {
+            return getTotalNanos(Phase.CLIENT);
+        }
+
+        @Override
+        public long getBytesCaptured() {
+            return SdkMetrics.getBytesCaptured();
+        }
+
+        @Override
+        public long getBytesTruncated() {
+            return SdkMetrics.getBytesTruncated();
+        }
+
+        @Override
+        public long getRedactionFailures() {
+            return SdkMetrics.getRedactionFailures();
+        }
+
+        @Override
+        public long getPayloadsDropped() {
+            return SdkMetrics.getPayloadsDropped();
+        }
+
+        @Override
+        public long getBodiesDropped() {
+            return SdkMetrics.getBodiesDropped();
+        }
+
+        @Override
+        public long getPayloadsFailed() {
+            return SdkMetrics.getPayloadsFailed();
+        }
+
+        @Override
+        public long getErrorsDropped() {
+            return SdkMetrics.getErrorsDropped();
+        }
+    }
+}
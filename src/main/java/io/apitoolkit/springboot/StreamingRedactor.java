@@ -0,0 +1,290 @@
+package io.apitoolkit.springboot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Single pass token-level redactor for the JsonPath subset made of member
+ * names, array indexes and wildcards ({@code $.a.b}, {@code $.arr[*].x},
+ * {@code $['a'][0]}, {@code $.*}). Paths outside that subset are handled by
+ * the JsonPath engine in {@link RedactionPlan}.
+ */
+final class StreamingRedactor {
+
+    // Active paths are tracked as a bit set, so a plan can hold at most 64 of them.
+    static final int MAX_PATHS = 64;
+
+    private static final Segment WILDCARD = new Segment(null, -1);
+
+    private final Segment[][] paths;
+    private final long allPaths;
+
+    private StreamingRedactor(Segment[][] paths) {
+        this.paths = paths;
+        this.allPaths = paths.length == MAX_PATHS ? -1L : (1L << paths.length) - 1;
+    }
+
+    /**
+     * Returns null when at least one of the paths cannot be evaluated while
+     * streaming.
+     */
+    static StreamingRedactor compile(List<String> jsonPaths) {
+        if (jsonPaths.isEmpty() || jsonPaths.size() > MAX_PATHS) {
+            return null;
+        }
+        Segment[][] compiled = new Segment[jsonPaths.size()][];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = parse(jsonPaths.get(i));
+            if (compiled[i] == null) {
+                return null;
+            }
+        }
+        return new StreamingRedactor(compiled);
+    }
+
+    /**
+     * Copies {@code data} token by token, replacing matched values. Returns
+     * {@code data} itself when nothing matched. A truncated body is redacted
+     * up to the last complete token and the unreadable tail is dropped.
+     */
+    byte[] redact(byte[] data, boolean truncated) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length + 64);
+        JsonReader in = new JsonReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8));
+        JsonWriter out = new JsonWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+        boolean changed;
+        try {
+            changed = copy(in, out);
+        } catch (IOException e) {
+            if (!truncated) {
+                throw e;
+            }
+            out.flush();
+            return buffer.toByteArray();
+        }
+        if (!changed) {
+            return data;
+        }
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private boolean copy(JsonReader in, JsonWriter out) throws IOException {
+        boolean changed = false;
+        long[] active = new long[8];
+        int[] index = new int[8];
+        boolean[] array = new boolean[8];
+        int depth = 0;
+        long valueActive = allPaths;
+
+        while (true) {
+            if (depth > 0 && array[depth - 1] && in.peek() != JsonToken.END_ARRAY) {
+                int parent = depth - 1;
+                valueActive = 0;
+                boolean redact = false;
+                for (long bits = active[parent]; bits != 0; bits &= bits - 1) {
+                    int p = Long.numberOfTrailingZeros(bits);
+                    if (paths[p][parent].matches(index[parent])) {
+                        if (parent + 1 == paths[p].length) {
+                            redact = true;
+                        } else {
+                            valueActive |= 1L << p;
+                        }
+                    }
+                }
+                index[parent]++;
+                if (redact) {
+                    in.skipValue();
+                    out.value(RedactionPlan.REDACTED);
+                    changed = true;
+                    continue;
+                }
+            }
+
+            JsonToken token = in.peek();
+            switch (token) {
+                case BEGIN_OBJECT:
+                case BEGIN_ARRAY:
+                    if (depth == active.length) {
+                        active = Arrays.copyOf(active, depth * 2);
+                        index = Arrays.copyOf(index, depth * 2);
+                        array = Arrays.copyOf(array, depth * 2);
+                    }
+                    array[depth] = token == JsonToken.BEGIN_ARRAY;
+                    active[depth] = valueActive;
+                    index[depth] = 0;
+                    depth++;
+                    if (token == JsonToken.BEGIN_ARRAY) {
+                        in.beginArray();
+                        out.beginArray();
+                    } else {
+                        in.beginObject();
+                        out.beginObject();
+                    }
+                    continue;
+                case END_OBJECT:
+                    in.endObject();
+                    out.endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    in.endArray();
+                    out.endArray();
+                    depth--;
+                    break;
+                case NAME:
+                    String name = in.nextName();
+                    out.name(name);
+                    int parent = depth - 1;
+                    valueActive = 0;
+                    boolean redact = false;
+                    for (long bits = active[parent]; bits != 0; bits &= bits - 1) {
+                        int p = Long.numberOfTrailingZeros(bits);
+                        if (paths[p][parent].matches(name)) {
+                            if (parent + 1 == paths[p].length) {
+                                redact = true;
+                            } else {
+                                valueActive |= 1L << p;
+                            }
+                        }
+                    }
+                    if (redact) {
+                        in.skipValue();
+                        out.value(RedactionPlan.REDACTED);
+                        changed = true;
+                    }
+                    continue;
+                case STRING:
+                    out.value(in.nextString());
+                    break;
+                case NUMBER:
+                    // Keep the number exactly as it was written.
+                    out.jsonValue(in.nextString());
+                    break;
+                case BOOLEAN:
+                    out.value(in.nextBoolean());
+                    break;
+                case NULL:
+                    in.nextNull();
+                    out.nullValue();
+                    break;
+                default:
+                    return changed;
+            }
+            if (depth == 0) {
+                return changed;
+            }
+        }
+    }
+
+    static Segment[] parse(String path) {
+        String p = path.trim();
+        if (!p.startsWith("$")) {
+            p = "$." + p;
+        }
+        ArrayList<Segment> segments = new ArrayList<>();
+        int i = 1;
+        int len = p.length();
+        while (i < len) {
+            char c = p.charAt(i);
+            if (c == '.') {
+                int start = i + 1;
+                if (start >= len || p.charAt(start) == '.') {
+                    return null;
+                }
+                int end = start;
+                while (end < len && p.charAt(end) != '.' && p.charAt(end) != '[') {
+                    end++;
+                }
+                String name = p.substring(start, end);
+                if (name.isEmpty()) {
+                    return null;
+                }
+                if (name.equals("*")) {
+                    segments.add(WILDCARD);
+                } else if (isPlainName(name)) {
+                    segments.add(new Segment(name, -1));
+                } else {
+                    return null;
+                }
+                i = end;
+            } else if (c == '[') {
+                int end = p.indexOf(']', i);
+                if (end < 0) {
+                    return null;
+                }
+                String content = p.substring(i + 1, end).trim();
+                if (content.equals("*")) {
+                    segments.add(WILDCARD);
+                } else if (content.length() >= 2
+                        && (content.charAt(0) == '\'' || content.charAt(0) == '"')
+                        && content.charAt(content.length() - 1) == content.charAt(0)) {
+                    String name = content.substring(1, content.length() - 1);
+                    if (name.indexOf('\'') >= 0 || name.indexOf('"') >= 0 || name.indexOf('\\') >= 0) {
+                        return null;
+                    }
+                    segments.add(new Segment(name, -1));
+                } else if (isIndex(content)) {
+                    segments.add(new Segment(null, Integer.parseInt(content)));
+                } else {
+                    return null;
+                }
+                i = end + 1;
+            } else {
+                return null;
+            }
+        }
+        return segments.isEmpty() ? null : segments.toArray(new Segment[0]);
+    }
+
+    private static boolean isPlainName(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '(' || c == ')' || c == '*' || c == '?' || c == '@' || c == ',' || c == ':'
+                    || c == '\'' || c == '"' || c == ']') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIndex(String content) {
+        if (content.isEmpty() || content.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < content.length(); i++) {
+            if (!Character.isDigit(content.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static final class Segment {
+        private final String name;
+        private final int index;
+
+        Segment(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        boolean matches(String member) {
+            return this == WILDCARD || (name != null && name.equals(member));
+        }
+
+        boolean matches(int element) {
+            return this == WILDCARD || (name == null && index == element);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package io.apitoolkit.springboot;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Decides after the response is known whether a captured exchange is worth
+ * emitting: server errors, reported errors and requests slower than the
+ * route's recent latency percentile are always kept, the rest is sampled.
+ */
+public class TailSampler {
+
+    // Beyond this many routes, latencies share a single tracker.
+    static final int MAX_ROUTES = 512;
+
+    private final double sampleRate;
+    private final double latencyPercentile;
+    private final ConcurrentMap<String, LatencyTracker> trackers = new ConcurrentHashMap<>();
+    private final LatencyTracker overflowTracker;
+
+    public TailSampler(double sampleRate, double latencyPercentile) {
+        this.sampleRate = sampleRate;
+        this.latencyPercentile = latencyPercentile;
+        this.overflowTracker = new LatencyTracker(latencyPercentile);
+    }
+
+    public boolean keep(String route, int statusCode, List<Map<String, Object>> errors, long durationNanos) {
+        boolean keep = statusCode >= 500 || (errors != null && !errors.isEmpty());
+        if (latencyPercentile > 0) {
+            // Always record, so the threshold also reflects the requests we keep.
+            if (tracker(route).record(durationNanos)) {
+                keep = true;
+            }
+        }
+        return keep || HeadSampler.sample(sampleRate);
+    }
+
+    private LatencyTracker tracker(String route) {
+        String key = route == null ? "" : route;
+        LatencyTracker tracker = trackers.get(key);
+        if (tracker != null) {
+            return tracker;
+        }
+        if (trackers.size() >= MAX_ROUTES) {
+            return overflowTracker;
+        }
+        LatencyTracker created = new LatencyTracker(latencyPercentile);
+        tracker = trackers.putIfAbsent(key, created);
+        return tracker != null ? tracker : created;
+    }
+
+    /**
+     * Log-linear histogram of recent latencies (four buckets per power of two
+     * of microseconds). Counts are halved once the window fills up so the
+     * percentile follows the current traffic.
+     */
+    static final class LatencyTracker {
+        static final int BUCKETS = 4 * 40;
+        static final int MIN_SAMPLES = 100;
+        static final int WINDOW = 4096;
+        static final int RECOMPUTE_EVERY = 128;
+
+        private final double percentile;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicInteger recorded = new AtomicInteger();
+        private volatile int thresholdBucket = Integer.MAX_VALUE;
+
+        LatencyTracker(double percentile) {
+            this.percentile = percentile;
+        }
+
+        /**
+         * Records the latency and returns true when it falls above the bucket
+         * holding the current percentile.
+         */
+        boolean record(long durationNanos) {
+            int bucket = bucket(durationNanos);
+            boolean slow = bucket > thresholdBucket;
+            counts.incrementAndGet(bucket);
+            if (recorded.incrementAndGet() % RECOMPUTE_EVERY == 0) {
+                recompute();
+            }
+            return slow;
+        }
+
+        static int bucket(long durationNanos) {
+            long micros = durationNanos / 1000;
+            if (micros < 4) {
+                return (int) Math.max(0, micros);
+            }
+            int log = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) ((micros >>> (log - 2)) & 3);
+            return Math.min(BUCKETS - 1, log * 4 + sub);
+        }
+
+        private void recompute() {
+            long total = 0;
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            if (total < MIN_SAMPLES) {
+                return;
+            }
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    thresholdBucket = i;
+                    break;
+                }
+            }
+            if (total >= WINDOW) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    counts.addAndGet(i, -(snapshot[i] / 2));
+                }
+            }
+        }
+    }
+}
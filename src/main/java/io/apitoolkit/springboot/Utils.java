@@ -1,22 +1,53 @@
 package io.apitoolkit.springboot;
 
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.time.Instant;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Objects;
 
 import com.google.gson.Gson;
-import com.jayway.jsonpath.DocumentContext;
-import com.jayway.jsonpath.JsonPath;
 
+import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 
 public class Utils {
 
     private static final Gson GSON = new Gson();
+    private static final String REDACTED = "[CLIENT_REDACTED]";
+
+    private static final AttributeKey<String> HOST = AttributeKey.stringKey("net.host.name");
+    private static final AttributeKey<String> MSG_ID = AttributeKey.stringKey("apitoolkit.msg_id");
+    private static final AttributeKey<String> ROUTE = AttributeKey.stringKey("http.route");
+    private static final AttributeKey<String> TARGET = AttributeKey.stringKey("http.target");
+    private static final AttributeKey<String> METHOD = AttributeKey.stringKey("http.request.method");
+    private static final AttributeKey<Long> STATUS_CODE = AttributeKey.longKey("http.response.status_code");
+    private static final AttributeKey<String> QUERY_PARAMS = AttributeKey.stringKey("http.request.query_params");
+    private static final AttributeKey<String> PATH_PARAMS = AttributeKey.stringKey("http.request.path_params");
+    private static final AttributeKey<String> PARENT_ID = AttributeKey.stringKey("apitoolkit.parent_id");
+    private static final AttributeKey<String> REQUEST_BODY = AttributeKey.stringKey("http.request.body");
+    private static final AttributeKey<String> RESPONSE_BODY = AttributeKey.stringKey("http.response.body");
+    private static final AttributeKey<Boolean> REQUEST_BODY_TRUNCATED = AttributeKey
+            .booleanKey("http.request.body.truncated");
+    private static final AttributeKey<Boolean> RESPONSE_BODY_TRUNCATED = AttributeKey
+            .booleanKey("http.response.body.truncated");
+    private static final AttributeKey<Long> REQUEST_BODY_SIZE = AttributeKey.longKey("http.request.body.size");
+    private static final AttributeKey<Long> RESPONSE_BODY_SIZE = AttributeKey.longKey("http.response.body.size");
+    private static final AttributeKey<String> REQUEST_BODY_CRC32 = AttributeKey.stringKey("http.request.body.crc32");
+    private static final AttributeKey<String> RESPONSE_BODY_CRC32 = AttributeKey
+            .stringKey("http.response.body.crc32");
+    private static final AttributeKey<String> REQUEST_BODY_CODEC = AttributeKey.stringKey("http.request.body.codec");
+    private static final AttributeKey<String> RESPONSE_BODY_CODEC = AttributeKey
+            .stringKey("http.response.body.codec");
+    private static final AttributeKey<String> REQUEST_BODY_SHAPE = AttributeKey.stringKey("http.request.body.shape");
+    private static final AttributeKey<String> RESPONSE_BODY_SHAPE = AttributeKey
+            .stringKey("http.response.body.shape");
+    private static final AttributeKey<String> ERRORS = AttributeKey.stringKey("apitoolkit.errors");
+
+    private static volatile LegacyConfig lastLegacyConfig;
 
     public static void setApitoolkitAttributesAndEndSpan(
             Span span,
@@ -36,63 +67,202 @@ public class Utils {
             Map<String, Object> config,
             String sdkType,
             String parentId) {
+        Map<String, Object> values = config == null ? Collections.<String, Object>emptyMap() : config;
+        ExchangeConfig exchangeConfig;
         try {
-            List<String> emptyList = new ArrayList<>();
-            List<String> redactRequestBody = (List<String>) config.getOrDefault("redactRequestBody", emptyList);
-            List<String> redactResponseBody = (List<String>) config.getOrDefault("redactResponseBody", emptyList);
-            List<String> redactHeaders = (List<String>) config.getOrDefault("redactHeaders", emptyList);
-            if (redactRequestBody == null) {
-                redactRequestBody = emptyList;
+            exchangeConfig = legacyConfig(values, sdkType);
+        } catch (Exception error) {
+            error.printStackTrace();
+            span.recordException(error);
+            span.end();
+            return;
+        }
+        // Payloads built off the request thread carry the time the response completed.
+        Object endTimestamp = values.get("endTimestamp");
+        setApitoolkitAttributesAndEndSpan(span, host, statusCode, queryParams, pathParams, reqHeaders,
+                respHeaders, method, rawUrl, msgId, urlPath,
+                CapturedBody.of(reqBody, Boolean.TRUE.equals(values.get("requestBodyTruncated"))),
+                CapturedBody.of(respBody, Boolean.TRUE.equals(values.get("responseBodyTruncated"))),
+                errors, exchangeConfig, parentId,
+                endTimestamp instanceof Instant ? (Instant) endTimestamp : null);
+    }
+
+    // Callers of the map overload usually pass the same map every time, its
+    // settings are read again only when a different map comes in, so changing
+    // the redaction settings of a map already passed has no effect.
+    static ExchangeConfig legacyConfig(Map<String, Object> config, String sdkType) {
+        LegacyConfig cached = lastLegacyConfig;
+        if (cached != null && cached.map == config && Objects.equals(cached.sdkType, sdkType)) {
+            return cached.config;
+        }
+        ExchangeConfig exchangeConfig = ExchangeConfig.fromMap(config, sdkType);
+        lastLegacyConfig = new LegacyConfig(config, sdkType, exchangeConfig);
+        return exchangeConfig;
+    }
+
+    private static final class LegacyConfig {
+        final Map<String, Object> map;
+        final String sdkType;
+        final ExchangeConfig config;
+
+        LegacyConfig(Map<String, Object> map, String sdkType, ExchangeConfig config) {
+            this.map = map;
+            this.sdkType = sdkType;
+            this.config = config;
+        }
+    }
+
+    public static void setApitoolkitAttributesAndEndSpan(
+            Span span,
+            String host,
+            int statusCode,
+            Map<String, String> queryParams,
+            Map<String, String> pathParams,
+            Map<String, String> reqHeaders,
+            Map<String, String> respHeaders,
+            String method,
+            String rawUrl,
+            String msgId,
+            String urlPath,
+            CapturedBody reqBody,
+            CapturedBody respBody,
+            List<Map<String, Object>> errors,
+            ExchangeConfig config,
+            String parentId,
+            Instant endTimestamp) {
+        try {
+            String encodedRequestBody = "";
+            if (!isKnownShape(span, reqBody, method, urlPath, false, config, REQUEST_BODY_SHAPE, REQUEST_BODY_SIZE)) {
+                encodedRequestBody = encodeBody(span, reqBody, config.getRequestBodyRedaction(), config,
+                        REQUEST_BODY_CODEC);
+            }
+            String encodedResponseBody = "";
+            if (!isKnownShape(span, respBody, method, urlPath, true, config, RESPONSE_BODY_SHAPE,
+                    RESPONSE_BODY_SIZE)) {
+                encodedResponseBody = encodeBody(span, respBody, config.getResponseBodyRedaction(), config,
+                        RESPONSE_BODY_CODEC);
+            }
+            long start = SdkMetrics.start();
+            span.setAllAttributes(config.getStaticAttributes());
+            span.setAttribute(HOST, host);
+            span.setAttribute(MSG_ID, msgId);
+            span.setAttribute(ROUTE, urlPath);
+            span.setAttribute(TARGET, rawUrl);
+            span.setAttribute(METHOD, method);
+            span.setAttribute(STATUS_CODE, (long) statusCode);
+            span.setAttribute(QUERY_PARAMS, GSON.toJson(queryParams));
+            span.setAttribute(PATH_PARAMS, GSON.toJson(pathParams));
+            span.setAttribute(PARENT_ID, parentId == null ? "" : parentId);
+            span.setAttribute(REQUEST_BODY, encodedRequestBody);
+            span.setAttribute(RESPONSE_BODY, encodedResponseBody);
+            if (reqBody.isTruncated()) {
+                span.setAttribute(REQUEST_BODY_TRUNCATED, true);
+            }
+            if (respBody.isTruncated()) {
+                span.setAttribute(RESPONSE_BODY_TRUNCATED, true);
             }
-            if (redactResponseBody == null) {
-                redactResponseBody = emptyList;
+            if (reqBody.isMetadataOnly()) {
+                setBodyMetadata(span, reqBody, REQUEST_BODY_SIZE, REQUEST_BODY_CRC32);
             }
-            if (redactHeaders == null) {
-                redactHeaders = emptyList;
+            if (respBody.isMetadataOnly()) {
+                setBodyMetadata(span, respBody, RESPONSE_BODY_SIZE, RESPONSE_BODY_CRC32);
             }
-            Boolean debug = (Boolean) config.getOrDefault("debug", false);
-            String encodedRequestBody = Base64.getEncoder()
-                    .encodeToString(redactFields(reqBody, redactRequestBody, debug));
-            String encodedResponseBody = Base64.getEncoder()
-                    .encodeToString(redactFields(respBody, redactResponseBody, debug));
-            span.setAttribute("net.host.name", host);
-            span.setAttribute("apitoolkit.msg_id", msgId);
-            span.setAttribute("http.route", urlPath);
-            span.setAttribute("http.target", rawUrl);
-            span.setAttribute("http.request.method", method);
-            span.setAttribute("http.response.status_code", statusCode);
-            span.setAttribute("http.request.query_params", GSON.toJson(queryParams));
-            span.setAttribute("http.request.path_params", GSON.toJson(pathParams));
-            span.setAttribute("apitoolkit.sdk_type", sdkType);
-            span.setAttribute("apitoolkit.parent_id", Optional.ofNullable(parentId).orElse(""));
-            span.setAttribute("http.request.body", encodedRequestBody);
-            span.setAttribute("http.response.body", encodedResponseBody);
-            span.setAttribute("apitoolkit.errors", GSON.toJson(errors));
-            span.setAttribute("apitoolkit.service_version", (String) config.getOrDefault("serviceVersion", ""));
-            span.setAttribute("apitoolkit.tags", GSON.toJson(config.getOrDefault("tags", emptyList)));
+            span.setAttribute(ERRORS, GSON.toJson(errors));
 
+            HeaderAttributes headers = config.getHeaders();
             for (Map.Entry<String, String> header : reqHeaders.entrySet()) {
-                span.setAttribute(
-                        "http.request.header." + header.getKey(),
-                        redactHeader(header.getKey(), header.getValue(), redactHeaders));
+                HeaderAttributes.Header attribute = headers.get(header.getKey());
+                if (!attribute.isSkipped()) {
+                    span.setAttribute(attribute.getRequestKey(),
+                            attribute.isRedacted() ? REDACTED : header.getValue());
+                }
             }
 
             for (Map.Entry<String, String> header : respHeaders.entrySet()) {
-                span.setAttribute(
-                        "http.response.header." + header.getKey(),
-                        redactHeader(header.getKey(), header.getValue(), redactHeaders));
+                HeaderAttributes.Header attribute = headers.get(header.getKey());
+                if (!attribute.isSkipped()) {
+                    span.setAttribute(attribute.getResponseKey(),
+                            attribute.isRedacted() ? REDACTED : header.getValue());
+                }
             }
+            SdkMetrics.record(SdkMetrics.Phase.ATTRIBUTES, start);
         } catch (Exception error) {
+            SdkMetrics.payloadFailed();
             error.printStackTrace();
             span.recordException(error);
         } finally {
-            span.end();
+            if (endTimestamp != null) {
+                span.end(endTimestamp);
+            } else {
+                span.end();
+            }
+        }
+    }
+
+    /**
+     * Records the shape fingerprint of a JSON body and returns true when the
+     * same shape was recently sent for this route, in which case the body is
+     * left out and only its size is recorded.
+     */
+    private static boolean isKnownShape(Span span, CapturedBody body, String method, String route,
+            boolean response, ExchangeConfig config, AttributeKey<String> shapeKey, AttributeKey<Long> sizeKey) {
+        BodyShapeCache shapes = config.getBodyShapes();
+        if (shapes == null || body.isMetadataOnly() || body.isTruncated() || body.getBytes().length == 0) {
+            return false;
+        }
+        long fingerprint = BodyShapeCache.fingerprint(body.getBytes());
+        if (fingerprint == BodyShapeCache.NO_FINGERPRINT) {
+            return false;
+        }
+        span.setAttribute(shapeKey, String.format("%016x", fingerprint));
+        if (shapes.shouldAttach(method, route, response, fingerprint)) {
+            return false;
+        }
+        span.setAttribute(sizeKey, (long) body.getBytes().length);
+        return true;
+    }
+
+    private static String encodeBody(Span span, CapturedBody body, RedactionPlan plan, ExchangeConfig config,
+            AttributeKey<String> codecKey) {
+        if (body.isMetadataOnly() || body.getBytes().length == 0) {
+            return "";
+        }
+        byte[] redacted = body.getBytes();
+        if (plan != null && !plan.isEmpty()) {
+            long start = SdkMetrics.start();
+            redacted = redactFields(redacted, plan, body.isTruncated(), config.isDebug());
+            SdkMetrics.record(SdkMetrics.Phase.REDACTION, start);
+        }
+        long start = SdkMetrics.start();
+        try {
+            BodyCompression compression = config.getBodyCompression();
+            if (compression != BodyCompression.NONE && redacted.length >= config.getBodyCompressionThreshold()) {
+                String compressed = compression.compressToBase64(redacted);
+                if (compressed != null) {
+                    span.setAttribute(codecKey, compression.getCodec());
+                    return compressed;
+                }
+            }
+            return config.isTextBodies() ? new String(redacted, StandardCharsets.UTF_8)
+                    : Base64.getEncoder().encodeToString(redacted);
+        } finally {
+            SdkMetrics.record(SdkMetrics.Phase.ENCODING, start);
+        }
+    }
+
+    private static void setBodyMetadata(Span span, CapturedBody body, AttributeKey<Long> sizeKey,
+            AttributeKey<String> checksumKey) {
+        if (body.getSize() >= 0) {
+            span.setAttribute(sizeKey, body.getSize());
+        }
+        if (body.getChecksum() >= 0) {
+            span.setAttribute(checksumKey, String.format("%08x", body.getChecksum()));
         }
     }
 
     public static String redactHeader(String header, String headerVal, List<String> redactHeaders) {
         if (redactHeaders.contains(header) || redactHeaders.contains(header.toLowerCase())) {
-            return "[CLIENT_REDACTED]";
+            return REDACTED;
         }
         return headerVal;
     }
@@ -101,28 +271,30 @@ public class Utils {
         if (jsonPaths == null || jsonPaths.isEmpty() || data.length == 0) {
             return data;
         }
-        try {
+        return redactFields(data, RedactionPlan.compile(jsonPaths, debug), debug);
+    }
 
-            String jsonData = new String(data, StandardCharsets.UTF_8);
-            DocumentContext jsonObject = JsonPath.parse(jsonData);
-            for (String path : jsonPaths) {
-                try {
-                    jsonObject = jsonObject.set(path, "[CLIENT_REDACTED]");
-                } catch (Exception e) {
-                    if (debug) {
-                        e.printStackTrace();
-                    }
-                }
-            }
-            String redactedJson = jsonObject.jsonString();
-            return redactedJson.getBytes(StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            if (debug) {
-                e.printStackTrace();
-            }
+    public static byte[] redactFields(byte[] data, RedactionPlan plan, Boolean debug) {
+        return redactFields(data, plan, false, debug);
+    }
+
+    public static byte[] redactFields(byte[] data, RedactionPlan plan, boolean truncated, Boolean debug) {
+        if (plan == null || data == null) {
             return data;
         }
+        return plan.apply(data, truncated, debug != null && debug);
+    }
 
+    // Accepts either a precompiled RedactionPlan or the legacy list of path strings.
+    @SuppressWarnings("unchecked")
+    static RedactionPlan redactionPlan(Object redactConfig, Boolean debug) {
+        if (redactConfig instanceof RedactionPlan) {
+            return (RedactionPlan) redactConfig;
+        }
+        if (redactConfig instanceof List) {
+            return RedactionPlan.compile((List<String>) redactConfig, debug);
+        }
+        return RedactionPlan.EMPTY;
     }
 
     public static HashMap<String, String> getPathParamsFromPattern(String pattern, String path) {
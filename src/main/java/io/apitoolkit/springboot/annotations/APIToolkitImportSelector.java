@@ -1,13 +1,55 @@
 package io.apitoolkit.springboot.annotations;
 
+import org.springframework.context.EnvironmentAware;
+import org.springframework.context.ResourceLoaderAware;
 import org.springframework.context.annotation.ImportSelector;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.util.ClassUtils;
 
 import io.apitoolkit.springboot.APIToolkitFilter;
 
-public class APIToolkitImportSelector implements ImportSelector {
+public class APIToolkitImportSelector implements ImportSelector, EnvironmentAware, ResourceLoaderAware {
+
+    private static final String WEB_FILTER = "io.apitoolkit.springboot.APIToolkitWebFilter";
+    private static final String DISPATCHER_HANDLER = "org.springframework.web.reactive.DispatcherHandler";
+    private static final String DISPATCHER_SERVLET = "org.springframework.web.servlet.DispatcherServlet";
+    private static final String REACTIVE_CONTEXT = "org.springframework.boot.web.reactive.context.ReactiveWebApplicationContext";
+
+    private Environment environment;
+    private ResourceLoader resourceLoader;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public void setResourceLoader(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
     @Override
     public String[] selectImports(AnnotationMetadata importingClassMetadata) {
-        return new String[] { APIToolkitFilter.class.getName() };
+        // The WebFilter is referenced by name, webflux is an optional dependency.
+        return new String[] { isReactive() ? WEB_FILTER : APIToolkitFilter.class.getName() };
+    }
+
+    private boolean isReactive() {
+        ClassLoader classLoader = this.resourceLoader != null ? this.resourceLoader.getClassLoader() : null;
+        if (!ClassUtils.isPresent(DISPATCHER_HANDLER, classLoader)) {
+            return false;
+        }
+        String type = this.environment != null ? this.environment.getProperty("spring.main.web-application-type") : null;
+        if (type != null) {
+            return "reactive".equalsIgnoreCase(type.trim());
+        }
+        if (this.resourceLoader != null && ClassUtils.isPresent(REACTIVE_CONTEXT, classLoader)
+                && ClassUtils.resolveClassName(REACTIVE_CONTEXT, classLoader).isInstance(this.resourceLoader)) {
+            return true;
+        }
+        // Same rule as Spring Boot: Spring MVC wins when both are on the classpath.
+        return !ClassUtils.isPresent(DISPATCHER_SERVLET, classLoader);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,55 @@
+package io.apitoolkit.springboot.integrations;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+
+/**
+ * Connection pool that tells the response interceptor when a connection goes
+ * back to the pool. Closing a response without reading its body, or aborting
+ * the request, releases the connection without touching the entity, so the
+ * {@link TeeHttpEntity} would otherwise never see the end of the exchange.
+ */
+class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+
+    private static final String ON_RELEASE = "apitoolkit_on_release";
+
+    /**
+     * Runs {@code callback} when the connection of the current exchange is
+     * released, whether the body was consumed, the response closed or the
+     * request aborted. Does nothing when the client was built with another
+     * connection manager or the connection is already released.
+     */
+    static void onRelease(HttpContext context, Runnable callback) {
+        Object connection = context.getAttribute(HttpCoreContext.HTTP_CONNECTION);
+        if (connection instanceof HttpContext) {
+            try {
+                ((HttpContext) connection).setAttribute(ON_RELEASE, callback);
+            } catch (IllegalStateException e) {
+                // Released before the interceptor ran, the entity is not streamed.
+            }
+        }
+    }
+
+    @Override
+    public void releaseConnection(HttpClientConnection managedConn, Object state, long keepalive, TimeUnit timeUnit) {
+        Object callback = null;
+        if (managedConn instanceof HttpContext) {
+            try {
+                callback = ((HttpContext) managedConn).removeAttribute(ON_RELEASE);
+            } catch (IllegalStateException e) {
+                // Already released.
+            }
+        }
+        try {
+            super.releaseConnection(managedConn, state, keepalive, timeUnit);
+        } finally {
+            if (callback instanceof Runnable) {
+                ((Runnable) callback).run();
+            }
+        }
+    }
+}
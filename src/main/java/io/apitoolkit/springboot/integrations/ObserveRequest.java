@@ -1,16 +1,36 @@
 package io.apitoolkit.springboot.integrations;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 
+import io.apitoolkit.springboot.APIToolkitContext;
+import io.apitoolkit.springboot.ContentTypePolicy;
+import io.apitoolkit.springboot.RedactionPlan;
 import jakarta.servlet.http.HttpServletRequest;
 
-import java.util.List;
+public class ObserveRequest implements Closeable {
+    static final String PARENT_ID = "apitoolkit_parent_id";
+    static final String URL_PATH_PATTERN = "apitoolkit_url_path_pattern";
+    static final String DEBUG = "apitoolkit_debug";
 
-public class ObserveRequest {
     private List<String> redactHeaders;
     private List<String> redactRequestBody;
     private List<String> redactResponseBody;
+    private RedactionPlan requestBodyRedaction;
+    private RedactionPlan responseBodyRedaction;
+
+    private int maxConnections = 200;
+    private int maxConnectionsPerRoute = 50;
+    private int maxCapturedBodyBytes = -1;
+    private ContentTypePolicy contentTypePolicy = ContentTypePolicy.DEFAULT;
+    private volatile CloseableHttpClient sharedClient;
 
     // Primary constructor
     public ObserveRequest(List<String> redactHeaders,
@@ -19,6 +39,8 @@ public class ObserveRequest {
         this.redactHeaders = redactHeaders;
         this.redactRequestBody = redactRequestBody;
         this.redactResponseBody = redactResponseBody;
+        this.requestBodyRedaction = RedactionPlan.compile(redactRequestBody);
+        this.responseBodyRedaction = RedactionPlan.compile(redactResponseBody);
     }
 
     public ObserveRequest() {
@@ -34,15 +56,125 @@ public class ObserveRequest {
         this(redactHeaders, redactRequestBody, null);
     }
 
+    public ObserveRequest(List<String> redactHeaders,
+            List<String> redactRequestBody,
+            List<String> redactResponseBody,
+            int maxConnections,
+            int maxConnectionsPerRoute) {
+        this(redactHeaders, redactRequestBody, redactResponseBody);
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    /**
+     * Keep at most this many bytes of each outgoing request and response body
+     * (-1 keeps everything). Must be set before the first client is built.
+     */
+    public void setMaxCapturedBodyBytes(int maxCapturedBodyBytes) {
+        this.maxCapturedBodyBytes = maxCapturedBodyBytes;
+    }
+
+    /**
+     * Content types whose bodies are captured, others are recorded by size
+     * and checksum only (defaults to {@link ContentTypePolicy#DEFAULT_CONTENT_TYPES}).
+     * Must be set before the first client is built.
+     */
+    public void setCaptureContentTypes(List<String> captureContentTypes) {
+        this.contentTypePolicy = ContentTypePolicy.of(captureContentTypes);
+    }
+
+    /**
+     * Instrumented client backed by a connection pool, built once and safe to
+     * share between threads. Per call details (parent message id, route
+     * pattern) come from {@link #createContext} or, when no context is passed,
+     * from the OpenTelemetry context set up by APIToolkitFilter.
+     */
+    public CloseableHttpClient getHttpClient() {
+        CloseableHttpClient client = this.sharedClient;
+        if (client == null) {
+            synchronized (this) {
+                client = this.sharedClient;
+                if (client == null) {
+                    PoolingHttpClientConnectionManager connectionManager = new InstrumentedConnectionManager();
+                    connectionManager.setMaxTotal(this.maxConnections);
+                    connectionManager.setDefaultMaxPerRoute(this.maxConnectionsPerRoute);
+                    client = HttpClients.custom()
+                            .setConnectionManager(connectionManager)
+                            .addInterceptorFirst(new RequestInterceptor(this.maxCapturedBodyBytes, this.contentTypePolicy))
+                            .addInterceptorFirst(new ResponseInterceptor(this.redactHeaders,
+                                    this.requestBodyRedaction, this.responseBodyRedaction,
+                                    this.maxCapturedBodyBytes, this.contentTypePolicy))
+                            .build();
+                    this.sharedClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Context to pass to {@code getHttpClient().execute(request, context)} so
+     * the outgoing span is linked to the given inbound request.
+     */
+    public HttpClientContext createContext(HttpServletRequest request, String urlPathPattern) {
+        HttpClientContext context = createContext(urlPathPattern);
+        if (request != null) {
+            Object parentId = request.getAttribute("apitoolkit_message_id");
+            if (parentId != null) {
+                context.setAttribute(PARENT_ID, parentId);
+            }
+            Object config = request.getAttribute("apitoolkit_config");
+            if (config instanceof Map) {
+                context.setAttribute(DEBUG, ((Map<?, ?>) config).get("debug"));
+            }
+        }
+        return context;
+    }
+
+    public HttpClientContext createContext(String urlPathPattern) {
+        HttpClientContext context = HttpClientContext.create();
+        String parentId = APIToolkitContext.currentMessageId();
+        if (parentId != null) {
+            context.setAttribute(PARENT_ID, parentId);
+        }
+        if (urlPathPattern != null) {
+            context.setAttribute(URL_PATH_PATTERN, urlPathPattern);
+        }
+        return context;
+    }
+
+    /**
+     * @deprecated builds a new client and connection pool on every call, use
+     *             {@link #getHttpClient()} with {@link #createContext} instead.
+     */
+    @Deprecated
     public CloseableHttpClient createHttpClient(HttpServletRequest request, String urlPathPattern) {
         return HttpClients.custom()
-                .addInterceptorFirst(new RequestInterceptor())
+                .setConnectionManager(new InstrumentedConnectionManager())
+                .addInterceptorFirst(new RequestInterceptor(this.maxCapturedBodyBytes, this.contentTypePolicy))
                 .addInterceptorFirst(new ResponseInterceptor(request, urlPathPattern, this.redactHeaders,
-                        this.redactRequestBody, this.redactResponseBody))
+                        this.requestBodyRedaction, this.responseBodyRedaction, this.maxCapturedBodyBytes,
+                        this.contentTypePolicy))
                 .build();
     }
 
+    /**
+     * @deprecated see {@link #createHttpClient(HttpServletRequest, String)}.
+     */
+    @Deprecated
     public CloseableHttpClient createHttpClient(HttpServletRequest request) {
         return createHttpClient(request, null);
     }
+
+    @Override
+    public void close() throws IOException {
+        CloseableHttpClient client;
+        synchronized (this) {
+            client = this.sharedClient;
+            this.sharedClient = null;
+        }
+        if (client != null) {
+            client.close();
+        }
+    }
 }
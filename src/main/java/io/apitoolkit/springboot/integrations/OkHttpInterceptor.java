@@ -0,0 +1,296 @@
+package io.apitoolkit.springboot.integrations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.apitoolkit.springboot.APIToolkitContext;
+import io.apitoolkit.springboot.CaptureBuffer;
+import io.apitoolkit.springboot.CapturedBody;
+import io.apitoolkit.springboot.ContentTypePolicy;
+import io.apitoolkit.springboot.ExchangeConfig;
+import io.apitoolkit.springboot.RedactionPlan;
+import io.apitoolkit.springboot.Utils;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Sink;
+import okio.Timeout;
+
+/**
+ * Records outgoing OkHttp calls. Add it once to a shared client with
+ * {@code new OkHttpClient.Builder().addInterceptor(new OkHttpInterceptor(...))};
+ * per call details (route pattern, parent message id) come from an
+ * {@link ObserveTag} on the request or from the OpenTelemetry context set up
+ * by APIToolkitFilter.
+ */
+public class OkHttpInterceptor implements Interceptor {
+
+    // Peeked bytes are held in memory until the application reads the body,
+    // so an unlimited capture still stops here.
+    static final int MAX_PEEK_BYTES = 1024 * 1024;
+
+    // Resolved on the first call, see tracer().
+    private volatile Tracer tracer;
+    private final ExchangeConfig config;
+    private final ContentTypePolicy contentTypePolicy;
+    private final int maxCapturedBodyBytes;
+    private final boolean debug;
+
+    /**
+     * @param captureContentTypes bodies of other content types are recorded
+     *                            by size only, the defaults when empty.
+     */
+    public OkHttpInterceptor(List<String> redactHeaders,
+            List<String> redactRequestBody,
+            List<String> redactResponseBody,
+            List<String> captureContentTypes,
+            int maxCapturedBodyBytes,
+            boolean debug) {
+        this.config = ExchangeConfig.builder("JavaOkHttpOutgoing")
+                .debug(debug)
+                .redactHeaders(redactHeaders)
+                .requestBodyRedaction(RedactionPlan.compile(redactRequestBody))
+                .responseBodyRedaction(RedactionPlan.compile(redactResponseBody))
+                .build();
+        this.contentTypePolicy = ContentTypePolicy.of(captureContentTypes);
+        this.maxCapturedBodyBytes = maxCapturedBodyBytes;
+        this.debug = debug;
+    }
+
+    public OkHttpInterceptor(List<String> redactHeaders,
+            List<String> redactRequestBody,
+            List<String> redactResponseBody,
+            int maxCapturedBodyBytes,
+            boolean debug) {
+        this(redactHeaders, redactRequestBody, redactResponseBody, null, maxCapturedBodyBytes, debug);
+    }
+
+    public OkHttpInterceptor(List<String> redactHeaders,
+            List<String> redactRequestBody,
+            List<String> redactResponseBody) {
+        this(redactHeaders, redactRequestBody, redactResponseBody, -1, false);
+    }
+
+    public OkHttpInterceptor() {
+        this(null, null, null);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Span span = tracer().spanBuilder("apitoolkit-http-span").startSpan();
+
+        CaptureBuffer requestCapture = captureRequestBody(request.body());
+
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            span.recordException(e);
+            span.end();
+            throw e;
+        }
+
+        try {
+            ObserveTag tag = request.tag(ObserveTag.class);
+            String urlPathPattern = tag != null ? tag.urlPathPattern : null;
+            String parentId = tag != null && tag.parentId != null ? tag.parentId
+                    : APIToolkitContext.currentMessageId();
+
+            HttpUrl url = request.url();
+            String rawUrl = url.toString();
+            HashMap<String, String> queryParams = new HashMap<>();
+            for (String name : url.queryParameterNames()) {
+                queryParams.put(name, url.queryParameter(name));
+            }
+            HashMap<String, String> pathParams = new HashMap<>();
+            if (urlPathPattern != null && urlPathPattern.length() > 0) {
+                pathParams = Utils.getPathParamsFromPattern(urlPathPattern, url.encodedPath());
+            }
+            String path = urlPathPattern != null ? urlPathPattern : rawUrl.split("\\?")[0];
+
+            // peekBody reads ahead into OkHttp's own buffer, the application still gets the whole body.
+            CapturedBody responseBody = CapturedBody.EMPTY;
+            ResponseBody body = response.body();
+            if (body != null && !captures(body.contentType())) {
+                // Reading a binary body just to checksum it is not worth it, report the declared length.
+                responseBody = CapturedBody.metadata(body.contentLength(), -1);
+            } else if (body != null && !isStreaming(body.contentType()) && !isDuplex(request.body())) {
+                int limit = this.maxCapturedBodyBytes < 0 ? MAX_PEEK_BYTES : this.maxCapturedBodyBytes;
+                byte[] peeked = response.peekBody(limit + 1L).bytes();
+                boolean truncated = false;
+                if (peeked.length > limit) {
+                    truncated = true;
+                    byte[] kept = new byte[limit];
+                    System.arraycopy(peeked, 0, kept, 0, kept.length);
+                    peeked = kept;
+                }
+                responseBody = CapturedBody.of(peeked, truncated);
+            }
+
+            List<Map<String, Object>> errors = new ArrayList<>();
+
+            Utils.setApitoolkitAttributesAndEndSpan(
+                    span,
+                    url.host(),
+                    response.code(),
+                    queryParams,
+                    pathParams,
+                    headers(request.headers()),
+                    headers(response.headers()),
+                    request.method(),
+                    rawUrl,
+                    "",
+                    path,
+                    CapturedBody.from(requestCapture),
+                    responseBody,
+                    errors,
+                    this.config,
+                    parentId,
+                    null
+            );
+        } catch (Exception e) {
+            if (this.debug) {
+                e.printStackTrace();
+            }
+            span.end();
+        }
+        return response;
+    }
+
+    // GlobalOpenTelemetry.get() installs a no-op instance for good when
+    // nothing is registered yet, so it is not called before the first request
+    // in case the client is built before the application's SDK.
+    private Tracer tracer() {
+        Tracer tracer = this.tracer;
+        if (tracer == null) {
+            tracer = GlobalOpenTelemetry.getTracer("");
+            this.tracer = tracer;
+        }
+        return tracer;
+    }
+
+    /**
+     * Copies the request body by writing it a second time, which is only safe
+     * for bodies that can be replayed. Bytes past the capture limit are
+     * counted but not copied, content types that are not captured are only
+     * counted and checksummed.
+     */
+    private CaptureBuffer captureRequestBody(RequestBody body) {
+        if (body == null || body.isOneShot() || body.isDuplex()) {
+            return null;
+        }
+        CaptureBuffer capture = new CaptureBuffer(this.maxCapturedBodyBytes);
+        capture.setMetadataOnly(!captures(body.contentType()));
+        try {
+            BufferedSink sink = Okio.buffer(new CaptureSink(capture));
+            body.writeTo(sink);
+            sink.flush();
+        } catch (IOException e) {
+            if (this.debug) {
+                e.printStackTrace();
+            }
+            capture.reset();
+        }
+        return capture;
+    }
+
+    /**
+     * Hands the capture at most one byte past its limit, enough to tell the
+     * body was truncated, and skips the rest of each write instead of copying
+     * it out of the Okio buffer.
+     */
+    static final class CaptureSink implements Sink {
+        private final CaptureBuffer capture;
+
+        CaptureSink(CaptureBuffer capture) {
+            this.capture = capture;
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            long copied = byteCount;
+            if (!capture.isMetadataOnly() && capture.getLimit() >= 0) {
+                copied = Math.min(byteCount, Math.max(0L, capture.getLimit() + 1L - capture.getTotalBytes()));
+            }
+            if (copied > 0) {
+                source.copyTo(capture, 0, copied);
+            }
+            source.skip(byteCount);
+            capture.skip(byteCount - copied);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private boolean captures(MediaType contentType) {
+        return this.contentTypePolicy.captures(contentType == null ? null : contentType.toString());
+    }
+
+    private static boolean isDuplex(RequestBody body) {
+        return body != null && body.isDuplex();
+    }
+
+    // Event streams never end, peeking would block until the server closes them.
+    private static boolean isStreaming(MediaType contentType) {
+        return contentType != null && "text".equals(contentType.type())
+                && "event-stream".equals(contentType.subtype());
+    }
+
+    private static HashMap<String, String> headers(Headers headers) {
+        HashMap<String, String> map = new HashMap<>();
+        for (int i = 0; i < headers.size(); i++) {
+            map.put(headers.name(i), headers.value(i));
+        }
+        return map;
+    }
+
+    /**
+     * Per call details, attach with
+     * {@code new Request.Builder().tag(ObserveTag.class, ObserveTag.of("/users/{id}"))}.
+     * The parent message id is taken when the tag is created, so calls queued
+     * with {@code enqueue} are still linked to the inbound request.
+     */
+    public static final class ObserveTag {
+        final String urlPathPattern;
+        final String parentId;
+
+        private ObserveTag(String urlPathPattern, String parentId) {
+            this.urlPathPattern = urlPathPattern;
+            this.parentId = parentId;
+        }
+
+        public static ObserveTag of(String urlPathPattern) {
+            return new ObserveTag(urlPathPattern, APIToolkitContext.currentMessageId());
+        }
+
+        public static ObserveTag of(String urlPathPattern, String parentId) {
+            return new ObserveTag(urlPathPattern, parentId);
+        }
+    }
+}
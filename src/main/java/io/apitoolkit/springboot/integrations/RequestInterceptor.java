@@ -1,32 +1,47 @@
 package io.apitoolkit.springboot.integrations;
 
-import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.NameValuePair;
-import org.apache.http.ParseException;
 import org.apache.http.client.utils.URLEncodedUtils;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.protocol.HttpContext;
-import org.apache.http.util.EntityUtils;
 
+import io.apitoolkit.springboot.CaptureBuffer;
+import io.apitoolkit.springboot.ContentTypePolicy;
+import io.apitoolkit.springboot.SdkMetrics;
 import io.opentelemetry.api.GlobalOpenTelemetry;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.Tracer;
 
 public class RequestInterceptor implements HttpRequestInterceptor {
 
+    private final int maxCapturedBodyBytes;
+    private final ContentTypePolicy contentTypePolicy;
+
+    public RequestInterceptor() {
+        this(-1);
+    }
+
+    public RequestInterceptor(int maxCapturedBodyBytes) {
+        this(maxCapturedBodyBytes, ContentTypePolicy.DEFAULT);
+    }
+
+    public RequestInterceptor(int maxCapturedBodyBytes, ContentTypePolicy contentTypePolicy) {
+        this.maxCapturedBodyBytes = maxCapturedBodyBytes;
+        this.contentTypePolicy = contentTypePolicy == null ? ContentTypePolicy.DEFAULT : contentTypePolicy;
+    }
+
     @Override
     public void process(HttpRequest request, HttpContext context) {
-
+        long start = SdkMetrics.start();
         Tracer tracer = GlobalOpenTelemetry.getTracer("");
         Span span = tracer.spanBuilder("apitoolkit-http-span").startSpan();
         context.setAttribute("span", span);
@@ -47,32 +62,30 @@ public class RequestInterceptor implements HttpRequestInterceptor {
 
         try {
             String host = new URI(uri).getHost();
-            context.setAttribute("host", host);
+            context.setAttribute("apitoolkit_host", host);
         } catch (URISyntaxException e) {
         }
 
         HashMap<String, String> requestHeaders = new HashMap<>();
-        for (org.apache.http.Header header : request.getAllHeaders()) {
+        for (Header header : request.getAllHeaders()) {
             requestHeaders.put(header.getName(), header.getValue());
         }
-        String requestBody = "";
-
         if (request instanceof HttpEntityEnclosingRequest) {
             HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) request;
             if (entityRequest.getEntity() != null) {
-                try {
-                    requestBody = EntityUtils.toString(entityRequest.getEntity(), StandardCharsets.UTF_8);
-                    entityRequest.setEntity(new StringEntity(requestBody, ContentType.get(entityRequest.getEntity())));
-
-                } catch (ParseException | IOException e) {
-
-                }
+                // The body is copied while the client writes it, ResponseInterceptor reads the copy.
+                CaptureBuffer capture = new CaptureBuffer(this.maxCapturedBodyBytes);
+                Header contentType = entityRequest.getEntity().getContentType();
+                capture.setMetadataOnly(
+                        !this.contentTypePolicy.captures(contentType == null ? null : contentType.getValue()));
+                entityRequest.setEntity(new TeeHttpEntity(entityRequest.getEntity(), capture, null));
+                context.setAttribute("apitoolkit_request_capture", capture);
             }
         }
         context.setAttribute("apitoolkit_request_headers", requestHeaders);
         context.setAttribute("apitoolkit_method", method);
         context.setAttribute("apitoolkit_raw_url", uri);
         context.setAttribute("apitoolkit_query_params", queryParamsMap);
-        context.setAttribute("apitoolkit_request_body", requestBody.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        SdkMetrics.record(SdkMetrics.Phase.CLIENT, start);
     }
 }
@@ -1,20 +1,23 @@
 package io.apitoolkit.springboot.integrations;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpResponseInterceptor;
-import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.protocol.HttpContext;
-import org.apache.http.util.EntityUtils;
 
+import io.apitoolkit.springboot.APIToolkitContext;
+import io.apitoolkit.springboot.CaptureBuffer;
+import io.apitoolkit.springboot.CapturedBody;
+import io.apitoolkit.springboot.ContentTypePolicy;
+import io.apitoolkit.springboot.ExchangeConfig;
+import io.apitoolkit.springboot.RedactionPlan;
+import io.apitoolkit.springboot.SdkMetrics;
 import io.apitoolkit.springboot.Utils;
 import io.opentelemetry.api.trace.Span;
 import jakarta.servlet.http.HttpServletRequest;
@@ -24,28 +27,43 @@ public class ResponseInterceptor implements HttpResponseInterceptor {
     private HashMap<String, Object> config;
     private String urlPathPattern;
     private List<String> redactHeaders;
-    private List<String> redactRequestBody;
-    private List<String> redactResponseBody;
+    private RedactionPlan redactRequestBody;
+    private RedactionPlan redactResponseBody;
     private String parent_id;
-    private Boolean debug;
+    private Boolean debug = false;
+    private int maxCapturedBodyBytes = -1;
+    private ContentTypePolicy contentTypePolicy;
+    // The debug flag can differ per call, so both variants are built up front.
+    private ExchangeConfig exchangeConfig;
+    private ExchangeConfig debugExchangeConfig;
+
+    // Stateless interceptor for shared clients, per call details come from the HttpContext.
+    ResponseInterceptor(List<String> redactHeaders, RedactionPlan redactRequestBody,
+            RedactionPlan redactResponseBody, int maxCapturedBodyBytes, ContentTypePolicy contentTypePolicy) {
+        this.redactHeaders = redactHeaders;
+        this.maxCapturedBodyBytes = maxCapturedBodyBytes;
+        this.redactRequestBody = redactRequestBody;
+        this.redactResponseBody = redactResponseBody;
+        this.contentTypePolicy = contentTypePolicy == null ? ContentTypePolicy.DEFAULT : contentTypePolicy;
+        this.exchangeConfig = exchangeConfig(redactHeaders, redactRequestBody, redactResponseBody, false);
+        this.debugExchangeConfig = exchangeConfig(redactHeaders, redactRequestBody, redactResponseBody, true);
+    }
 
     ResponseInterceptor(HttpServletRequest req, String urlPathPattern, List<String> redactHeaders,
-            List<String> redactRequestBody, List<String> redactResponseBody) {
+            RedactionPlan redactRequestBody, RedactionPlan redactResponseBody, int maxCapturedBodyBytes,
+            ContentTypePolicy contentTypePolicy) {
+        this(redactHeaders, redactRequestBody, redactResponseBody, maxCapturedBodyBytes, contentTypePolicy);
+        this.urlPathPattern = urlPathPattern;
         try {
             config = (HashMap<String, Object>) req.getAttribute("apitoolkit_config");
             this.parent_id = (String) req.getAttribute("apitoolkit_message_id");
-            if (config.get("debug") != null && (boolean) config.get("debug")) {
+            if (config != null && config.get("debug") != null && (boolean) config.get("debug")) {
                 this.debug = true;
             } else {
                 this.debug = false;
             }
-            this.urlPathPattern = urlPathPattern;
-            this.redactHeaders = redactHeaders;
-            this.redactResponseBody = redactResponseBody;
-            this.redactRequestBody = redactRequestBody;
-
         } catch (Exception e) {
-            if (config.get("debug") != null && (boolean) config.get("debug")) {
+            if (config != null && config.get("debug") != null && (boolean) config.get("debug")) {
                 e.printStackTrace();
             }
         }
@@ -53,94 +71,107 @@ public class ResponseInterceptor implements HttpResponseInterceptor {
 
     @Override
     public void process(HttpResponse response, HttpContext context) {
+        long start = SdkMetrics.start();
+        Boolean debug = this.debug;
+        Object contextDebug = context.getAttribute(ObserveRequest.DEBUG);
+        if (contextDebug instanceof Boolean) {
+            debug = (Boolean) contextDebug;
+        }
         try {
-            Span span = (Span) context.getAttribute("span");
-            String host = (String) context.getAttribute("apitoolkit_host");
+            String parentId = (String) context.getAttribute(ObserveRequest.PARENT_ID);
+            if (parentId == null) {
+                parentId = this.parent_id != null ? this.parent_id : APIToolkitContext.currentMessageId();
+            }
+            String urlPathPattern = (String) context.getAttribute(ObserveRequest.URL_PATH_PATTERN);
+            if (urlPathPattern == null) {
+                urlPathPattern = this.urlPathPattern;
+            }
+            final Span span = (Span) context.getAttribute("span");
+            final String host = (String) context.getAttribute("apitoolkit_host");
 
-            byte[] requestBodyStr = (byte[]) context.getAttribute("apitoolkit_request_body");
-            requestBodyStr = requestBodyStr == null ? "".getBytes() : requestBodyStr;
-            byte[] requestBody = Utils.redactFields(requestBodyStr, this.redactRequestBody, this.debug);
-            HashMap<String, String> requestHeaders = (HashMap<String, String>) context
+            CaptureBuffer requestCapture = (CaptureBuffer) context.getAttribute("apitoolkit_request_capture");
+            final CapturedBody requestBody = CapturedBody.from(requestCapture);
+            final HashMap<String, String> requestHeaders = (HashMap<String, String>) context
                     .getAttribute("apitoolkit_request_headers");
 
-            HashMap<String, String> responseHeaders = new HashMap<>();
-            for (org.apache.http.Header header : response.getAllHeaders()) {
+            final HashMap<String, String> responseHeaders = new HashMap<>();
+            for (Header header : response.getAllHeaders()) {
                 responseHeaders.put(header.getName(), header.getValue());
             }
 
-            String method = (String) context.getAttribute("apitoolkit_method");
-            String rawUrl = (String) context.getAttribute("apitoolkit_raw_url");
-            HashMap<String, String> queryParams = (HashMap<String, String>) context
+            final String method = (String) context.getAttribute("apitoolkit_method");
+            final String rawUrl = (String) context.getAttribute("apitoolkit_raw_url");
+            final HashMap<String, String> queryParams = (HashMap<String, String>) context
                     .getAttribute("apitoolkit_query_params");
 
-            int statusCode = response.getStatusLine().getStatusCode();
-            HttpEntity entity = response.getEntity();
-            byte[] responseBody = null;
-            if (entity != null) {
-                responseBody = EntityUtils.toByteArray(entity);
-                response.setEntity(new BufferedHttpEntity(entity, responseBody));
-
-            }
+            final int statusCode = response.getStatusLine().getStatusCode();
 
             HashMap<String, String> pathParams = new HashMap<>();
-            if (this.urlPathPattern != null && this.urlPathPattern.length() > 0) {
-                pathParams = Utils.getPathParamsFromPattern(this.urlPathPattern, rawUrl);
+            if (urlPathPattern != null && urlPathPattern.length() > 0) {
+                pathParams = Utils.getPathParamsFromPattern(urlPathPattern, rawUrl);
             }
+            final HashMap<String, String> finalPathParams = pathParams;
 
             String urlWithoutQuery = rawUrl.split("\\?")[0];
-            String path = this.urlPathPattern != null ? this.urlPathPattern : urlWithoutQuery;
-
-            HashMap<String, Object> outConfig = new HashMap<>();
-            outConfig.put("debug", this.debug);
-            outConfig.put("redactHeaders", this.redactHeaders);
-            outConfig.put("redactRequestBody", this.redactRequestBody);
-            outConfig.put("redactResponseBody", this.redactResponseBody);
-
-            List<Map<String, Object>> errors = new ArrayList<>();
-
-            Utils.setApitoolkitAttributesAndEndSpan(
-                    span,
-                    host,
-                    statusCode,
-                    queryParams,
-                    pathParams,
-                    requestHeaders,
-                    responseHeaders,
-                    method,
-                    rawUrl,
-                    "",
-                    path,
-                    requestBody,
-                    responseBody,
-                    errors,
-                    outConfig,
-                    "JavaApacheOutgoing",
-                    this.parent_id
-            );
+            final String path = urlPathPattern != null ? urlPathPattern : urlWithoutQuery;
+            final String finalParentId = parentId;
+            final ExchangeConfig outConfig = Boolean.TRUE.equals(debug) ? this.debugExchangeConfig
+                    : this.exchangeConfig;
+
+            HttpEntity entity = response.getEntity();
+            final CaptureBuffer responseCapture = new CaptureBuffer(this.maxCapturedBodyBytes);
+            if (entity != null) {
+                Header contentType = entity.getContentType();
+                responseCapture.setMetadataOnly(
+                        !this.contentTypePolicy.captures(contentType == null ? null : contentType.getValue()));
+            }
+            Runnable finish = () -> {
+                List<Map<String, Object>> errors = new ArrayList<>();
+
+                Utils.setApitoolkitAttributesAndEndSpan(
+                        span,
+                        host,
+                        statusCode,
+                        queryParams,
+                        finalPathParams,
+                        requestHeaders,
+                        responseHeaders,
+                        method,
+                        rawUrl,
+                        "",
+                        path,
+                        requestBody,
+                        CapturedBody.from(responseCapture),
+                        errors,
+                        outConfig,
+                        finalParentId,
+                        null
+                );
+            };
+            if (entity == null) {
+                finish.run();
+            } else {
+                // The span is finished once the application has consumed or closed the body,
+                // or released the connection without reading it.
+                TeeHttpEntity tee = new TeeHttpEntity(entity, responseCapture, finish);
+                response.setEntity(tee);
+                InstrumentedConnectionManager.onRelease(context, tee::complete);
+            }
         } catch (Exception e) {
-            if (this.debug) {
+            if (debug) {
                 e.printStackTrace();
             }
         }
+        SdkMetrics.record(SdkMetrics.Phase.CLIENT, start);
     }
 
-    class BufferedHttpEntity extends HttpEntityWrapper {
-
-        private final byte[] body;
-
-        public BufferedHttpEntity(HttpEntity entity, byte[] body) {
-            super(entity);
-            this.body = body;
-        }
-
-        @Override
-        public InputStream getContent() throws IOException {
-            return new ByteArrayInputStream(body);
-        }
-
-        @Override
-        public long getContentLength() {
-            return body.length;
-        }
+    private static ExchangeConfig exchangeConfig(List<String> redactHeaders, RedactionPlan redactRequestBody,
+            RedactionPlan redactResponseBody, boolean debug) {
+        return ExchangeConfig.builder("JavaApacheOutgoing")
+                .debug(debug)
+                .redactHeaders(redactHeaders)
+                .requestBodyRedaction(redactRequestBody)
+                .responseBodyRedaction(redactResponseBody)
+                .build();
     }
 }
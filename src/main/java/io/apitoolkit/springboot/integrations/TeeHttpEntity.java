@@ -0,0 +1,130 @@
+package io.apitoolkit.springboot.integrations;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import io.apitoolkit.springboot.CaptureBuffer;
+
+/**
+ * Copies the bytes of an entity into a {@link CaptureBuffer} while the
+ * client (request) or the application (response) streams it, instead of
+ * buffering the whole entity up front. {@code onComplete} runs once, when the
+ * content has been fully read, written or closed, or {@link #complete()} is
+ * called.
+ */
+class TeeHttpEntity extends HttpEntityWrapper {
+
+    private final CaptureBuffer capture;
+    private final Runnable onComplete;
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private volatile TeeInputStream content;
+
+    TeeHttpEntity(HttpEntity wrappedEntity, CaptureBuffer capture, Runnable onComplete) {
+        super(wrappedEntity);
+        this.capture = capture;
+        this.onComplete = onComplete;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        InputStream content = super.getContent();
+        if (content == null || completed.get()) {
+            return content;
+        }
+        TeeInputStream tee = this.content;
+        if (tee != null && tee.wraps(content)) {
+            // Streamed entities hand out the same stream, keep copying from it.
+            return tee;
+        }
+        if (tee != null) {
+            // A repeatable entity starts over, keep the last read only.
+            capture.reset();
+        }
+        tee = new TeeInputStream(content);
+        this.content = tee;
+        return tee;
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        // Repeatable entities are written again on retries, keep the last attempt only.
+        capture.reset();
+        try {
+            super.writeTo(new FilterOutputStream(outStream) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    capture.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    capture.write(b, off, len);
+                }
+
+                @Override
+                public void close() {
+                    // The caller owns the stream.
+                }
+            });
+        } finally {
+            complete();
+        }
+    }
+
+    void complete() {
+        if (onComplete != null && completed.compareAndSet(false, true)) {
+            onComplete.run();
+        }
+    }
+
+    private class TeeInputStream extends FilterInputStream {
+
+        TeeInputStream(InputStream in) {
+            super(in);
+        }
+
+        boolean wraps(InputStream stream) {
+            return in == stream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                complete();
+            } else {
+                capture.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count == -1) {
+                complete();
+            } else if (count > 0) {
+                capture.write(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                complete();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package io.apitoolkit.springboot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class APErrorsTest {
+
+    private static RuntimeException fail(int depth) {
+        if (depth == 0) {
+            return new IllegalStateException("boom");
+        }
+        return fail(depth - 1);
+    }
+
+    @Test
+    public void testRepeatedErrorsReuseTheRenderedStackTrace() {
+        List<Map<String, Object>> built = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            built.add(APErrors.buildError(fail(3)));
+        }
+        Map<String, Object> first = built.get(0);
+        Map<String, Object> second = built.get(1);
+
+        assertEquals(first.get("fingerprint"), second.get("fingerprint"));
+        assertSame(first.get("stack_trace"), second.get("stack_trace"));
+        assertEquals((Long) first.get("occurrences") + 1, second.get("occurrences"));
+        assertTrue(((String) first.get("when")).endsWith("Z"));
+    }
+
+    @Test
+    public void testStackTraceIsCappedAndRepeatsAreCounted() {
+        RuntimeException deep = fail(APErrors.MAX_STACK_FRAMES + 10);
+        String stackTrace = (String) APErrors.buildError(deep).get("stack_trace");
+        assertEquals(APErrors.MAX_STACK_FRAMES + 1, stackTrace.split("\n").length);
+        assertTrue(stackTrace.startsWith("io.apitoolkit.springboot.APErrorsTest.fail"));
+
+        List<Map<String, Object>> errors = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            APErrors.addError(errors, fail(1));
+        }
+        APErrors.addError(errors, new IllegalArgumentException("other"));
+        assertEquals(2, errors.size());
+        assertEquals(3, errors.get(0).get("count"));
+    }
+
+    @Test
+    public void testCachedStackTraceIsNotReusedForADeeperError() {
+        // Same types and same top fingerprint frames, one call deeper.
+        String shallow = (String) APErrors.buildError(fail(APErrors.FINGERPRINT_FRAMES * 2)).get("stack_trace");
+        String deeper = (String) APErrors.buildError(fail(APErrors.FINGERPRINT_FRAMES * 2 + 1)).get("stack_trace");
+
+        assertNotEquals(shallow, deeper);
+    }
+}
@@ -2,20 +2,32 @@ package io.apitoolkit.springboot;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import org.mockito.Mock;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.stereotype.Controller;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -24,6 +36,9 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -95,9 +110,172 @@ public class APIToolkitFilterTest {
                 .andExpectAll(status().isOk(), header().exists("x-api"), content().string("file response content"));
     }
 
+    @Test
+    public void testResponseLargerThanCaptureLimitIsStreamedInFull() throws Exception {
+        apiToolkitFilter = new APIToolkitFilter();
+        this.filterConfig.put("apitoolkit.maxCapturedBodyBytes", "4");
+        String jsonRequestBody = "{\"username\": \"user\", \"password\": \"pass\"}";
+
+        standaloneSetup(new TestController())
+                .addFilter(apiToolkitFilter, "APIToolkitFilter", this.filterConfig, null, "*")
+                .build()
+                .perform(post("/post-test")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonRequestBody))
+                .andExpectAll(status().isOk(), content().string("post received"));
+    }
+
+    @Test
+    public void testAsyncRequestIsRecordedWhenTheAsyncContextCompletes() throws Exception {
+        List<String> recorded = new ArrayList<>();
+        apiToolkitFilter = new APIToolkitFilter() {
+            @Override
+            public void buildPayload(Span span, HttpServletRequest req, HttpServletResponse res,
+                    CapturedBody req_body, CapturedBody res_body, Integer statusCode, String msgid) {
+                recorded.add(statusCode + " " + new String(res_body.getBytes(), StandardCharsets.UTF_8));
+                span.end();
+            }
+        };
+        MockMvc mockMvc = standaloneSetup(new TestController())
+                .addFilter(apiToolkitFilter, "APIToolkitFilter", this.filterConfig, null, "*")
+                .build();
+
+        MvcResult result = mockMvc.perform(get("/async-test"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals(0, recorded.size());
+
+        mockMvc.perform(asyncDispatch(result)).andExpect(content().string("async done"));
+        result.getRequest().getAsyncContext().complete();
+        assertEquals(Arrays.asList("200 async done"), recorded);
+    }
+
+    @Test
+    public void testExcludedPathsAreNotRecorded() throws Exception {
+        List<String> recorded = new ArrayList<>();
+        apiToolkitFilter = new APIToolkitFilter() {
+            @Override
+            public void buildPayload(Span span, HttpServletRequest req, HttpServletResponse res,
+                    CapturedBody req_body, CapturedBody res_body, Integer statusCode, String msgid) {
+                recorded.add(req.getRequestURI());
+                span.end();
+            }
+        };
+        this.filterConfig.put("apitoolkit.excludePaths", "/java-test");
+        MockMvc mockMvc = standaloneSetup(new TestController())
+                .addFilter(apiToolkitFilter, "APIToolkitFilter", this.filterConfig, null, "*")
+                .build();
+
+        mockMvc.perform(get("/java-test")).andExpect(status().isOk());
+        assertEquals(0, recorded.size());
+        mockMvc.perform(post("/post-test")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\": \"user\", \"password\": \"pass\"}"))
+                .andExpect(status().isOk());
+        assertEquals(Arrays.asList("/post-test"), recorded);
+    }
+
+    @Test
+    public void testRouteMetricsCountRequestsThatAreNotRecorded() throws Exception {
+        apiToolkitFilter = new APIToolkitFilter();
+        this.filterConfig.put("apitoolkit.excludePaths", "/java-test");
+        this.filterConfig.put("apitoolkit.routeMetrics", "true");
+        MockMvc mockMvc = standaloneSetup(new TestController())
+                .addFilter(apiToolkitFilter, "APIToolkitFilter", this.filterConfig, null, "*")
+                .build();
+
+        mockMvc.perform(get("/java-test")).andExpect(status().isOk());
+        mockMvc.perform(get("/java-test")).andExpect(status().isOk());
+        mockMvc.perform(post("/post-test")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\": \"user\", \"password\": \"pass\"}"))
+                .andExpect(status().isOk());
+
+        RouteMetrics metrics = apiToolkitFilter.getRouteMetrics();
+        assertEquals(2, metrics.cell("/java-test", "GET", 200).count.sum());
+        assertEquals(1, metrics.cell("/post-test", "POST", 200).count.sum());
+    }
+
+    @Test
+    public void testQueryStringModeDoesNotParseTheParameterMap() throws Exception {
+        apiToolkitFilter = new APIToolkitFilter();
+        this.filterConfig.put("apitoolkit.queryParamMode", "query-string");
+        MockFilterConfig config = new MockFilterConfig();
+        this.filterConfig.forEach(config::addInitParameter);
+        apiToolkitFilter.init(config);
+        MockHttpServletRequest req = new MockHttpServletRequest("POST", "/search") {
+            @Override
+            public Map<String, String[]> getParameterMap() {
+                throw new AssertionError("parameter map parsed");
+            }
+        };
+        req.setQueryString("q=red+shoes&page=2");
+        req.setContentType("application/x-www-form-urlencoded");
+        byte[] form = "page=3&sort=price".getBytes(StandardCharsets.UTF_8);
+
+        Map<String, String> params = apiToolkitFilter.requestParams(req, CapturedBody.of(form, false));
+        assertEquals("red shoes", params.get("q"));
+        assertEquals("2, 3", params.get("page"));
+        assertEquals("price", params.get("sort"));
+        assertEquals(2, apiToolkitFilter.requestParams(req, CapturedBody.of(form, true)).size());
+
+        // Case-insensitive content type, unknown charsets fall back to UTF-8.
+        req.setContentType("Application/X-WWW-Form-Urlencoded; charset=no-such-charset");
+        byte[] utf8 = "city=Z\u00fcrich&page=3".getBytes(StandardCharsets.UTF_8);
+        params = apiToolkitFilter.requestParams(req, CapturedBody.of(utf8, false));
+        assertEquals("Z\u00fcrich", params.get("city"));
+        assertEquals("2, 3", params.get("page"));
+    }
+
+    @Test
+    public void testQueryStringModeNeverAsksTheContainerForFormParameters() throws Exception {
+        apiToolkitFilter = new APIToolkitFilter();
+        this.filterConfig.put("apitoolkit.queryParamMode", "query-string");
+        MockFilterConfig config = new MockFilterConfig();
+        this.filterConfig.forEach(config::addInitParameter);
+        apiToolkitFilter.init(config);
+        MockHttpServletRequest req = new MockHttpServletRequest("POST", "/search") {
+            @Override
+            public Map<String, String[]> getParameterMap() {
+                throw new AssertionError("parameter map parsed");
+            }
+        };
+        req.setQueryString("q=shoes");
+        req.setContentType("application/x-www-form-urlencoded");
+        req.setContent("page=3&sort=price".getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse res = new MockHttpServletResponse();
+
+        // The application never reads the form body.
+        apiToolkitFilter.doFilter(req, res, (request, response) -> response.getWriter().write("ok"));
+        assertEquals("ok", res.getContentAsString());
+    }
+
+    @Test
+    public void testInitLeavesTheGlobalOpenTelemetryToTheApplication() throws Exception {
+        GlobalOpenTelemetry.resetForTest();
+        try {
+            apiToolkitFilter = new APIToolkitFilter();
+            this.filterConfig.put("apitoolkit.routeMetrics", "true");
+            MockFilterConfig config = new MockFilterConfig();
+            this.filterConfig.forEach(config::addInitParameter);
+            apiToolkitFilter.init(config);
+
+            // Throws when init() already pinned the no-op instance.
+            GlobalOpenTelemetry.set(OpenTelemetry.noop());
+        } finally {
+            GlobalOpenTelemetry.resetForTest();
+        }
+    }
+
     @Controller
     private static class TestController {
 
+        @GetMapping("/async-test")
+        @ResponseBody
+        public Callable<String> async() {
+            return () -> "async done";
+        }
+
         @GetMapping("/java-test")
         public String get(HttpServletRequest request, HttpServletResponse response) {
             assertEquals("GET", request.getMethod());
@@ -0,0 +1,181 @@
+package io.apitoolkit.springboot;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.server.reactive.AbstractServerHttpRequest;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import org.springframework.http.server.reactive.SslInfo;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.adapter.DefaultServerWebExchange;
+import org.springframework.web.server.i18n.AcceptHeaderLocaleContextResolver;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public class APIToolkitWebFilterTest {
+
+    private APIToolkitWebFilter webFilter;
+
+    @Before
+    public void setup() {
+        HashMap<String, String> config = new HashMap<>();
+        config.put("apitoolkit.redactHeaders", "authorization");
+        config.put("apitoolkit.redactRequestBody", "$.password");
+        config.put("apitoolkit.redactResponseBody", "$.password");
+        config.put("apitoolkit.captureRequestBody", "true");
+        config.put("apitoolkit.captureResponseBody", "true");
+        config.put("apitoolkit.maxCapturedBodyBytes", "8");
+        webFilter = new APIToolkitWebFilter(config);
+        webFilter.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        webFilter.destroy();
+    }
+
+    @Test
+    public void testBodiesLargerThanCaptureLimitAreStreamedInFull() {
+        String json = "{\"password\":\"secret\",\"name\":\"a fairly long name\"}";
+        TestResponse response = new TestResponse();
+        ServerWebExchange exchange = exchange(new TestRequest(HttpMethod.POST, "/echo?page=1", json), response);
+
+        webFilter.filter(exchange, ex -> ex.getResponse().writeWith(ex.getRequest().getBody())).block();
+
+        assertEquals(json, response.written.toString(StandardCharsets.UTF_8));
+        assertNotNull(exchange.getAttribute("apitoolkit_message_id"));
+    }
+
+    @Test
+    public void testChunksAreCopiedOnlyUpToTheLimit() {
+        CaptureBuffer capture = new CaptureBuffer(8);
+        DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+        DataBuffer first = factory.wrap("{\"name\":".getBytes(StandardCharsets.UTF_8));
+        DataBuffer second = factory.wrap("\"a fairly long name\"}".getBytes(StandardCharsets.UTF_8));
+
+        APIToolkitWebFilter.capture(capture, first);
+        APIToolkitWebFilter.capture(capture, second);
+
+        assertEquals("{\"name\":", new String(capture.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(29, capture.getTotalBytes());
+        assertTrue(capture.isTruncated());
+        assertEquals(0, second.readPosition());
+    }
+
+    @Test
+    public void testErrorsAreRecordedAndPropagated() {
+        ServerWebExchange exchange = exchange(new TestRequest(HttpMethod.GET, "/boom", ""), new TestResponse());
+        try {
+            webFilter.filter(exchange, ex -> Mono.error(new IllegalStateException("boom"))).block();
+            fail("expected the error to propagate");
+        } catch (IllegalStateException e) {
+            assertEquals("boom", e.getMessage());
+        }
+        List<?> errors = exchange.getAttribute("APITOOLKIT_ERRORS");
+        assertEquals(1, errors.size());
+    }
+
+    private static ServerWebExchange exchange(TestRequest request, TestResponse response) {
+        return new DefaultServerWebExchange(request, response, new DefaultWebSessionManager(),
+                ServerCodecConfigurer.create(), new AcceptHeaderLocaleContextResolver());
+    }
+
+    private static class TestRequest extends AbstractServerHttpRequest {
+        private final HttpMethod method;
+        private final byte[] body;
+
+        TestRequest(HttpMethod method, String uri, String body) {
+            super(URI.create("http://localhost" + uri), "", new HttpHeaders());
+            this.method = method;
+            this.body = body.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        @Override
+        public Flux<DataBuffer> getBody() {
+            return Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(body));
+        }
+
+        @Override
+        protected MultiValueMap<String, HttpCookie> initCookies() {
+            return new LinkedMultiValueMap<>();
+        }
+
+        @Override
+        protected SslInfo initSslInfo() {
+            return null;
+        }
+
+        @Override
+        public <T> T getNativeRequest() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class TestResponse extends AbstractServerHttpResponse {
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+        TestResponse() {
+            super(DefaultDataBufferFactory.sharedInstance);
+        }
+
+        @Override
+        protected Mono<Void> writeWithInternal(Publisher<? extends DataBuffer> body) {
+            return Flux.from(body).doOnNext(buffer -> {
+                byte[] bytes = new byte[buffer.readableByteCount()];
+                buffer.read(bytes);
+                written.write(bytes, 0, bytes.length);
+                DataBufferUtils.release(buffer);
+            }).then();
+        }
+
+        @Override
+        protected Mono<Void> writeAndFlushWithInternal(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return Flux.from(body).concatMap(this::writeWithInternal).then();
+        }
+
+        @Override
+        protected void applyStatusCode() {
+        }
+
+        @Override
+        protected void applyHeaders() {
+        }
+
+        @Override
+        protected void applyCookies() {
+        }
+
+        @Override
+        public <T> T getNativeResponse() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
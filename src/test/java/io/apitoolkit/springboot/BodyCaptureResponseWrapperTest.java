@@ -0,0 +1,35 @@
+package io.apitoolkit.springboot;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class BodyCaptureResponseWrapperTest {
+
+    @Test
+    public void testResetDiscardsCapturedAndBufferedOutput() throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        BodyCaptureResponseWrapper wrapper = new BodyCaptureResponseWrapper(response, new CaptureBuffer(-1));
+
+        wrapper.getOutputStream().write("partial".getBytes(StandardCharsets.UTF_8));
+        wrapper.resetBuffer();
+        wrapper.getOutputStream().write("{\"error\":true}".getBytes(StandardCharsets.UTF_8));
+        assertEquals("{\"error\":true}", response.getContentAsString());
+        assertEquals("{\"error\":true}", new String(wrapper.getContentAsByteArray(), StandardCharsets.UTF_8));
+
+        wrapper.reset();
+        PrintWriter writer = wrapper.getWriter();
+        writer.write("still buffered in the writer");
+        wrapper.reset();
+        wrapper.getWriter().write("ok");
+        wrapper.finish();
+        assertEquals("ok", response.getContentAsString());
+        assertEquals("ok", new String(wrapper.getContentAsByteArray(), StandardCharsets.UTF_8));
+        assertFalse(wrapper.isTruncated());
+    }
+}
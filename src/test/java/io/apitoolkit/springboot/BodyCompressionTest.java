@@ -0,0 +1,55 @@
+package io.apitoolkit.springboot;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+public class BodyCompressionTest {
+
+    private static byte[] jsonBody() {
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < 500; i++) {
+            body.append("{\"id\":").append(i).append(",\"name\":\"user\",\"active\":true},");
+        }
+        return body.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testRoundTrips() throws IOException {
+        byte[] body = jsonBody();
+
+        byte[] gzip = Base64.getDecoder().decode(BodyCompression.GZIP.compressToBase64(body));
+        assertArrayEquals(body, readAll(new GZIPInputStream(new ByteArrayInputStream(gzip))));
+
+        byte[] deflate = Base64.getDecoder().decode(BodyCompression.DEFLATE.compressToBase64(body));
+        assertArrayEquals(body, readAll(new InflaterInputStream(new ByteArrayInputStream(deflate))));
+
+        // Buffers are reused, a second body must not see leftovers of the first.
+        byte[] small = "{\"a\":\"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\"}".getBytes(StandardCharsets.UTF_8);
+        gzip = Base64.getDecoder().decode(BodyCompression.GZIP.compressToBase64(small));
+        assertArrayEquals(small, readAll(new GZIPInputStream(new ByteArrayInputStream(gzip))));
+    }
+
+    @Test
+    public void testSkipsBodiesThatDoNotShrink() {
+        assertNull(BodyCompression.GZIP.compressToBase64("{}".getBytes(StandardCharsets.UTF_8)));
+        assertNull(BodyCompression.NONE.compressToBase64(jsonBody()));
+        assertEquals(BodyCompression.DEFLATE, BodyCompression.parse(" deflate "));
+        assertEquals(BodyCompression.NONE, BodyCompression.parse(null));
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            return stream.readAllBytes();
+        }
+    }
+}
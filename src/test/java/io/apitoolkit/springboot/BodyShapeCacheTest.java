@@ -0,0 +1,42 @@
+package io.apitoolkit.springboot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class BodyShapeCacheTest {
+
+    private static long fingerprint(String json) {
+        return BodyShapeCache.fingerprint(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFingerprintIgnoresValuesOrderAndArrayLength() {
+        long shape = fingerprint("{\"id\":1,\"name\":\"a\",\"tags\":[\"x\"]}");
+
+        assertEquals(shape, fingerprint("{\"name\":\"b\",\"tags\":[\"y\",\"z\"],\"id\":2}"));
+        assertNotEquals(shape, fingerprint("{\"id\":\"1\",\"name\":\"a\",\"tags\":[\"x\"]}"));
+        assertNotEquals(shape, fingerprint("{\"id\":1,\"name\":\"a\"}"));
+        assertEquals(BodyShapeCache.NO_FINGERPRINT, fingerprint("id=1&name=a"));
+        assertEquals(BodyShapeCache.NO_FINGERPRINT, fingerprint("{\"id\":1,\"na"));
+    }
+
+    @Test
+    public void testAttachesNewShapesAndRefreshesAfterTheInterval() {
+        BodyShapeCache cache = new BodyShapeCache(100, 60);
+        long shape = fingerprint("{\"id\":1}");
+        long now = 0;
+
+        assertTrue(cache.shouldAttach("GET", "/users/{id}", true, shape, now));
+        assertFalse(cache.shouldAttach("GET", "/users/{id}", true, shape, now + 1));
+        // Same shape on another route or direction is new.
+        assertTrue(cache.shouldAttach("GET", "/orders/{id}", true, shape, now + 1));
+        assertTrue(cache.shouldAttach("GET", "/users/{id}", false, shape, now + 1));
+        assertTrue(cache.shouldAttach("GET", "/users/{id}", true, shape, now + TimeUnit.SECONDS.toNanos(61)));
+    }
+}
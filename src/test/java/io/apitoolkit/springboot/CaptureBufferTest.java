@@ -0,0 +1,52 @@
+package io.apitoolkit.springboot;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class CaptureBufferTest {
+
+    @Test
+    public void testKeepsOnlyTheFirstBytes() {
+        CaptureBuffer buffer = new CaptureBuffer(5);
+        byte[] data = "hello world".getBytes(StandardCharsets.UTF_8);
+        buffer.write(data, 0, 3);
+        buffer.write(data, 3, data.length - 3);
+        buffer.write('!');
+
+        assertArrayEquals("hello".getBytes(StandardCharsets.UTF_8), buffer.toByteArray());
+        assertEquals(12, buffer.getTotalBytes());
+        assertTrue(buffer.isTruncated());
+    }
+
+    @Test
+    public void testNegativeLimitKeepsEverything() {
+        CaptureBuffer buffer = new CaptureBuffer(-1);
+        byte[] data = new byte[10000];
+        buffer.write(data, 0, data.length);
+
+        assertEquals(10000, buffer.size());
+        assertFalse(buffer.isTruncated());
+    }
+
+    @Test
+    public void testMetadataOnlyKeepsSizeAndChecksum() {
+        CaptureBuffer buffer = new CaptureBuffer(-1);
+        buffer.setMetadataOnly(true);
+        byte[] data = "\u0089PNG....".getBytes(StandardCharsets.ISO_8859_1);
+        buffer.write(data, 0, data.length);
+
+        java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+        crc.update(data, 0, data.length);
+        CapturedBody body = CapturedBody.from(buffer);
+        assertTrue(body.isMetadataOnly());
+        assertEquals(0, body.getBytes().length);
+        assertEquals(data.length, body.getSize());
+        assertEquals(crc.getValue(), body.getChecksum());
+        assertFalse(buffer.isTruncated());
+    }
+}
@@ -0,0 +1,37 @@
+package io.apitoolkit.springboot;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ContentTypePolicyTest {
+
+    @Test
+    public void testDefaultsCaptureTextAndSkipBinary() {
+        ContentTypePolicy policy = ContentTypePolicy.DEFAULT;
+
+        assertTrue(policy.captures("application/json"));
+        assertTrue(policy.captures("Application/JSON; charset=utf-8"));
+        assertTrue(policy.captures("application/vnd.api+json"));
+        assertTrue(policy.captures("text/html"));
+        assertTrue(policy.captures(null));
+        assertFalse(policy.captures("image/png"));
+        assertFalse(policy.captures("application/x-protobuf"));
+        assertFalse(policy.captures("multipart/form-data; boundary=abc"));
+        assertFalse(policy.captures("application/zip"));
+    }
+
+    @Test
+    public void testConfiguredList() {
+        ContentTypePolicy policy = ContentTypePolicy.of(Arrays.asList("application/json", " image/* "));
+
+        assertTrue(policy.captures("image/png"));
+        assertTrue(policy.captures("application/json"));
+        assertFalse(policy.captures("text/plain"));
+        assertSame(ContentTypePolicy.DEFAULT, ContentTypePolicy.of(Collections.singletonList("")));
+    }
+}
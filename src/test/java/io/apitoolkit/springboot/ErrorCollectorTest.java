@@ -0,0 +1,67 @@
+package io.apitoolkit.springboot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+
+public class ErrorCollectorTest {
+
+    @Test
+    public void testConcurrentReportsAreBoundedAndCounted() throws Exception {
+        ErrorCollector errors = new ErrorCollector(4);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 100; i++) {
+                    errors.add(APErrors.buildError(new IllegalStateException("boom " + i)));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int total = 0;
+        for (Map<String, Object> error : errors) {
+            Object count = error.get("count");
+            total += count == null ? 1 : (Integer) count;
+        }
+        assertTrue(errors.size() >= 1 && errors.size() <= 4);
+        assertEquals(800, total + errors.getDropped());
+    }
+
+    @Test
+    public void testReportErrorUsesTheCollectorOnTheContext() throws Exception {
+        ErrorCollector errors = new ErrorCollector();
+        assertFalse(APErrors.reportError(new IllegalStateException("outside")));
+
+        Thread worker;
+        try (Scope scope = Context.current().with(APIToolkitContext.ERRORS, errors).makeCurrent()) {
+            worker = new Thread(Context.current().wrap(() -> {
+                APErrors.reportError(new IllegalStateException("boom"));
+            }));
+        }
+        worker.start();
+        worker.join();
+        assertEquals(1, errors.size());
+        assertEquals("boom", errors.get(0).get("message"));
+    }
+}
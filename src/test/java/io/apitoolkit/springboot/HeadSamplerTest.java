@@ -0,0 +1,60 @@
+package io.apitoolkit.springboot;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class HeadSamplerTest {
+
+    @Test
+    public void testFirstMatchingRuleWins() {
+        HeadSampler sampler = HeadSampler.parse(1.0, "/health=0, /users/{id}=0,/api/**=1");
+
+        assertFalse(sampler.sample(new MockHttpServletRequest("GET", "/health")));
+        assertFalse(sampler.sample(new MockHttpServletRequest("GET", "/health/live")));
+        assertTrue(sampler.sample(new MockHttpServletRequest("GET", "/healthz")));
+        assertFalse(sampler.sample(new MockHttpServletRequest("GET", "/users/42")));
+        assertTrue(sampler.sample(new MockHttpServletRequest("GET", "/users/42/orders")));
+        assertTrue(sampler.sample(new MockHttpServletRequest("GET", "/api/search")));
+    }
+
+    @Test
+    public void testRulesMatchAfterTheContextPath() {
+        HeadSampler sampler = HeadSampler.parse(1.0, "/health=0,/users/{id}=0");
+
+        assertFalse(sampler.sample(request("/app", "/app/health")));
+        assertTrue(sampler.sample(request("/app", "/app/healthz")));
+        assertFalse(sampler.sample(request("/app", "/app/users/42")));
+        assertTrue(sampler.sample(request("/app", "/app/users/42/orders")));
+    }
+
+    private static MockHttpServletRequest request(String contextPath, String uri) {
+        MockHttpServletRequest req = new MockHttpServletRequest("GET", uri);
+        req.setContextPath(contextPath);
+        return req;
+    }
+
+    @Test
+    public void testGlobalRateAppliesWithoutMatchingRule() {
+        HeadSampler sampler = HeadSampler.parse(0.0, "/api=1");
+
+        assertTrue(sampler.sample(new MockHttpServletRequest("GET", "/api/x")));
+        assertFalse(sampler.sample(new MockHttpServletRequest("GET", "/other")));
+        assertFalse(sampler.isSampleAll());
+        assertTrue(HeadSampler.parse(1.0, "").isSampleAll());
+    }
+
+    @Test
+    public void testTokenBucketCapsPerSecond() {
+        HeadSampler.TokenBucket bucket = new HeadSampler.TokenBucket(10);
+        long now = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(bucket.tryAcquire(now));
+        }
+        assertFalse(bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now + TimeUnit.MILLISECONDS.toNanos(150)));
+    }
+}
@@ -0,0 +1,41 @@
+package io.apitoolkit.springboot;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class HeaderAttributesTest {
+
+    @Test
+    public void testRedactionAndListsIgnoreCase() {
+        HeaderAttributes headers = new HeaderAttributes(Arrays.asList("Authorization", "x-api-key"),
+                Collections.<String>emptyList(), Arrays.asList("Accept-Language"));
+
+        assertTrue(headers.get("authorization").isRedacted());
+        assertTrue(headers.get("X-API-KEY").isRedacted());
+        assertFalse(headers.get("Content-Type").isRedacted());
+        assertTrue(headers.get("accept-language").isSkipped());
+        assertFalse(headers.get("Content-Type").isSkipped());
+        assertEquals("http.request.header.Content-Type", headers.get("Content-Type").getRequestKey().getKey());
+        assertSame(headers.get("Content-Type"), headers.get("Content-Type"));
+
+        HeaderAttributes allowlist = new HeaderAttributes(null, Arrays.asList("content-type"), null);
+        assertFalse(allowlist.get("Content-Type").isSkipped());
+        assertTrue(allowlist.get("User-Agent").isSkipped());
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        HeaderAttributes headers = new HeaderAttributes(Arrays.asList("authorization"), null, null);
+        for (int i = 0; i < HeaderAttributes.MAX_CACHED_NAMES * 2; i++) {
+            assertFalse(headers.get("x-random-" + i).isRedacted());
+        }
+        assertEquals(HeaderAttributes.MAX_CACHED_NAMES, headers.cachedNames());
+        assertTrue(headers.get("Authorization").isRedacted());
+    }
+}
@@ -0,0 +1,54 @@
+package io.apitoolkit.springboot;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+
+public class MessageIdStrategyTest {
+
+    @Test
+    public void testEveryStrategyProducesDistinctUuids() {
+        for (MessageIdStrategy strategy : MessageIdStrategy.values()) {
+            Set<String> ids = new HashSet<>();
+            for (int i = 0; i < 1000; i++) {
+                String id = strategy.generate(null);
+                assertEquals(id, UUID.fromString(id).toString());
+                ids.add(id);
+            }
+            assertEquals(strategy.name(), 1000, ids.size());
+        }
+    }
+
+    @Test
+    public void testTimeOrderedIdsCarryTheirTimestamp() {
+        long before = System.currentTimeMillis();
+        UUID id = UUID.fromString(MessageIdStrategy.TIME_ORDERED.generate(null));
+        assertEquals(7, id.version());
+        assertEquals(2, id.variant());
+        long millis = id.getMostSignificantBits() >>> 16;
+        assertTrue(millis >= before && millis <= System.currentTimeMillis());
+    }
+
+    @Test
+    public void testSpanIdStrategyIsDerivedFromTheSpan() {
+        Span span = mock(Span.class);
+        when(span.getSpanContext()).thenReturn(SpanContext.create("0af7651916cd43dd8448eb211c80319c",
+                "b7ad6b7169203331", TraceFlags.getSampled(), TraceState.getDefault()));
+
+        String id = MessageIdStrategy.SPAN_ID.generate(span);
+        assertEquals("8448eb21-1c80-819c-b7ad-6b7169203331", id);
+        assertEquals(id, MessageIdStrategy.SPAN_ID.generate(span));
+        assertEquals(MessageIdStrategy.FAST_RANDOM, MessageIdStrategy.parse("fast-random"));
+    }
+}
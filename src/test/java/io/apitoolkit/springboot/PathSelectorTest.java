@@ -0,0 +1,36 @@
+package io.apitoolkit.springboot;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class PathSelectorTest {
+
+    @Test
+    public void testExcludedPrefixesMatchWholeSegments() {
+        PathSelector selector = PathSelector.parse(null,
+                new String[] { "/actuator", "/static/**", "/assets/*.css" });
+
+        assertFalse(selector.selects("/actuator"));
+        assertFalse(selector.selects("/actuator/health/liveness"));
+        assertFalse(selector.selects("/static/js/app.js"));
+        assertFalse(selector.selects("/assets/site.css"));
+        assertTrue(selector.selects("/actuators"));
+        assertTrue(selector.selects("/assets/site.js"));
+        assertTrue(selector.selects("/users/1"));
+        // Context path is skipped in place.
+        assertFalse(selector.selects("/shop/actuator/health", 5));
+    }
+
+    @Test
+    public void testIncludesWithExcludesTakingPrecedence() {
+        PathSelector selector = PathSelector.parse(new String[] { "/api/**", "/users/{id}" },
+                new String[] { "/api/internal" });
+
+        assertTrue(selector.selects("/api/orders"));
+        assertTrue(selector.selects("/users/42"));
+        assertFalse(selector.selects("/api/internal/cache"));
+        assertFalse(selector.selects("/health"));
+        assertTrue(PathSelector.parse(new String[] { "" }, null).selectsAll());
+    }
+}
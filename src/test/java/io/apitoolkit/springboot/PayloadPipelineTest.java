@@ -0,0 +1,106 @@
+package io.apitoolkit.springboot;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+
+public class PayloadPipelineTest {
+
+    private ExchangeSnapshot snapshot(Span span) {
+        return new ExchangeSnapshot(span, "localhost", 200, new HashMap<String, String>(), null,
+                new HashMap<String, String>(), new HashMap<String, String>(), "GET", "/", "id", "/",
+                CapturedBody.of("{}".getBytes(), false), CapturedBody.of("{}".getBytes(), false), null,
+                ExchangeConfig.builder("JavaSpringBoot").build(), null, null);
+    }
+
+    @Test
+    public void testRingBufferIsBoundedAndFifo() {
+        PayloadPipeline.RingBuffer queue = new PayloadPipeline.RingBuffer(3);
+        assertEquals(4, queue.capacity());
+
+        ExchangeSnapshot[] items = new ExchangeSnapshot[4];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = snapshot(mock(Span.class));
+            assertTrue(queue.offer(items[i]));
+        }
+        assertFalse(queue.offer(snapshot(mock(Span.class))));
+
+        for (ExchangeSnapshot item : items) {
+            assertSame(item, queue.poll());
+        }
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testQueuedPayloadsAreEmittedBeforeShutdown() {
+        PayloadPipeline pipeline = new PayloadPipeline(8, 2, PayloadPipeline.OverflowPolicy.BLOCK, false);
+        Span span = mock(Span.class);
+        for (int i = 0; i < 100; i++) {
+            pipeline.submit(snapshot(span));
+        }
+        pipeline.shutdown(5000);
+
+        verify(span, times(100)).end();
+        assertEquals(0, pipeline.getDroppedCount());
+    }
+
+    @Test
+    public void testDropBodiesEmitsOnCallerWhenFull() {
+        PayloadPipeline pipeline = new PayloadPipeline(2, 1, PayloadPipeline.OverflowPolicy.DROP_BODIES, false);
+        Span span = mock(Span.class);
+        for (int i = 0; i < 1000; i++) {
+            pipeline.submit(snapshot(span));
+        }
+        pipeline.shutdown(5000);
+
+        verify(span, times(1000)).end();
+        if (pipeline.getBodiesDroppedCount() > 0) {
+            verify(span, atLeastOnce()).setAttribute(AttributeKey.stringKey("http.request.body"), "");
+        } else {
+            verify(span, never()).setAttribute(AttributeKey.stringKey("http.request.body"), "");
+        }
+        verify(span, never()).recordException(any(Throwable.class));
+    }
+
+    @Test
+    public void testDroppedPayloadsStillEndTheirSpan() {
+        PayloadPipeline pipeline = new PayloadPipeline(2, 1, PayloadPipeline.OverflowPolicy.DROP_NEWEST, false);
+        Span span = mock(Span.class);
+        for (int i = 0; i < 1000; i++) {
+            pipeline.submit(snapshot(span));
+        }
+        pipeline.shutdown(5000);
+
+        verify(span, times(1000)).end();
+        verify(span, times(1000 - (int) pipeline.getDroppedCount()))
+                .setAttribute(AttributeKey.stringKey("http.request.method"), "GET");
+    }
+
+    @Test
+    public void testIdleWorkersAreWokenBySubmit() throws Exception {
+        PayloadPipeline pipeline = new PayloadPipeline(4, 2, PayloadPipeline.OverflowPolicy.BLOCK, false);
+        Span span = mock(Span.class);
+        for (int round = 1; round <= 20; round++) {
+            // Long enough for both workers to park.
+            Thread.sleep(5);
+            pipeline.submit(snapshot(span));
+            verify(span, timeout(1000).times(round)).end();
+        }
+        pipeline.shutdown(5000);
+    }
+}
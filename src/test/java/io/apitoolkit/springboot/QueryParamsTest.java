@@ -0,0 +1,36 @@
+package io.apitoolkit.springboot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class QueryParamsTest {
+
+    @Test
+    public void testParsesLikeTheParameterMap() {
+        Map<String, String> params = QueryParams.parse(
+                "q=caf%C3%A9+au+lait&tag=a&tag=b&flag&&=orphan&empty=&bad=%zz&limit=10", StandardCharsets.UTF_8);
+
+        Map<String, String> expected = new HashMap<>();
+        expected.put("q", "café au lait");
+        expected.put("tag", "a, b");
+        expected.put("flag", "");
+        expected.put("empty", "");
+        expected.put("bad", "%zz");
+        expected.put("limit", "10");
+        assertEquals(expected, params);
+        assertTrue(QueryParams.parse(null, StandardCharsets.UTF_8).isEmpty());
+        assertTrue(QueryParams.parse("", StandardCharsets.UTF_8).isEmpty());
+    }
+
+    @Test
+    public void testModeParsing() {
+        assertEquals(QueryParams.Mode.PARAMETER_MAP, QueryParams.Mode.parse(null));
+        assertEquals(QueryParams.Mode.PARAMETER_MAP, QueryParams.Mode.parse(" "));
+        assertEquals(QueryParams.Mode.QUERY_STRING, QueryParams.Mode.parse("query-string"));
+    }
+}
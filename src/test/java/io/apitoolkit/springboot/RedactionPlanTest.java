@@ -0,0 +1,107 @@
+package io.apitoolkit.springboot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class RedactionPlanTest {
+
+    @Test
+    public void testNoMatchReturnsOriginalBody() {
+        byte[] body = "{\"name\": \"John Doe\"}".getBytes(StandardCharsets.UTF_8);
+        RedactionPlan plan = RedactionPlan.compile(Arrays.asList("$.password", "$.user.email"));
+
+        assertSame(body, plan.apply(body, false));
+    }
+
+    @Test
+    public void testRedactsNestedAndArrayPaths() {
+        String json = "{\"users\": [{\"email\": \"a@b.c\", \"id\": 1}, {\"email\": \"d@e.f\", \"id\": 2}], \"token\": \"abc\"}";
+        RedactionPlan plan = RedactionPlan.compile(Arrays.asList("$.users[*].email", "$.token"));
+
+        String result = new String(plan.apply(json.getBytes(StandardCharsets.UTF_8), false), StandardCharsets.UTF_8);
+
+        assertEquals(
+                "{\"users\":[{\"email\":\"[CLIENT_REDACTED]\",\"id\":1},{\"email\":\"[CLIENT_REDACTED]\",\"id\":2}],\"token\":\"[CLIENT_REDACTED]\"}",
+                result);
+    }
+
+    @Test
+    public void testNonJsonBodyIsLeftUntouched() {
+        byte[] body = "password=secret".getBytes(StandardCharsets.UTF_8);
+        RedactionPlan plan = RedactionPlan.compile(Arrays.asList("$.password"));
+
+        assertSame(body, plan.apply(body, false));
+    }
+
+    @Test
+    public void testBlankAndInvalidPathsAreSkipped() {
+        RedactionPlan plan = RedactionPlan.compile(new String[] { "", " ", "$[" }, false);
+
+        assertTrue(plan.isEmpty());
+        assertSame(RedactionPlan.EMPTY, plan);
+    }
+
+    @Test
+    public void testSimplePathsUseStreamingEngine() {
+        assertTrue(RedactionPlan.compile(Arrays.asList("$.a.b", "$.arr[*].x", "$['c'][0]", "$.*.d")).isStreaming());
+        assertFalse(RedactionPlan.compile(Arrays.asList("$.a", "$..password")).isStreaming());
+        assertFalse(RedactionPlan.compile(Arrays.asList("$.items[?(@.secret)]")).isStreaming());
+    }
+
+    @Test
+    public void testStreamingRedactionKeepsValuesUntouched() {
+        String json = "{\"a\": {\"b\": {\"deep\": [1, 2]}, \"n\": 1.50e3}, \"arr\": [{\"x\": 1}, {\"y\": null}, 3],"
+                + " \"c\": [\"first\", \"second\"], \"ok\": true, \"s\": \"caf\u00e9 \\\"q\\\"\"}";
+        RedactionPlan plan = RedactionPlan.compile(Arrays.asList("$.a.b", "$.arr[*].x", "$['c'][0]"));
+
+        String result = new String(plan.apply(json.getBytes(StandardCharsets.UTF_8), false), StandardCharsets.UTF_8);
+
+        assertEquals("{\"a\":{\"b\":\"[CLIENT_REDACTED]\",\"n\":1.50e3},\"arr\":[{\"x\":\"[CLIENT_REDACTED]\"},{\"y\":null},3],"
+                + "\"c\":[\"[CLIENT_REDACTED]\",\"second\"],\"ok\":true,\"s\":\"caf\u00e9 \\\"q\\\"\"}", result);
+    }
+
+    @Test
+    public void testStreamingWildcardMatchesMembersAndElements() {
+        String json = "{\"a\": {\"k1\": {\"d\": 1}, \"k2\": {\"e\": 2}}, \"list\": [[1, 2], [3]]}";
+        RedactionPlan plan = RedactionPlan.compile(Arrays.asList("$.a.*.d", "$.list[*][0]"));
+
+        String result = new String(plan.apply(json.getBytes(StandardCharsets.UTF_8), false), StandardCharsets.UTF_8);
+
+        assertEquals("{\"a\":{\"k1\":{\"d\":\"[CLIENT_REDACTED]\"},\"k2\":{\"e\":2}},"
+                + "\"list\":[[\"[CLIENT_REDACTED]\",2],[\"[CLIENT_REDACTED]\"]]}", result);
+    }
+
+    @Test
+    public void testDeepScanFallsBackToJsonPath() {
+        String json = "{\"user\": {\"password\": \"x\"}}";
+        RedactionPlan plan = RedactionPlan.compile(Arrays.asList("$..password"));
+
+        String result = new String(plan.apply(json.getBytes(StandardCharsets.UTF_8), false), StandardCharsets.UTF_8);
+
+        assertEquals("{\"user\":{\"password\":\"[CLIENT_REDACTED]\"}}", result);
+    }
+
+    @Test
+    public void testTruncatedBodyIsRedactedUpToTheCut() {
+        String json = "{\"name\": \"John\", \"password\": \"123456\", \"notes\": \"some long te";
+        RedactionPlan plan = RedactionPlan.compile(Arrays.asList("$.password"));
+
+        String result = new String(plan.apply(json.getBytes(StandardCharsets.UTF_8), true, false), StandardCharsets.UTF_8);
+
+        assertEquals("{\"name\":\"John\",\"password\":\"[CLIENT_REDACTED]\"", result);
+    }
+
+    @Test
+    public void testTruncatedBodyIsDroppedByJsonPathEngine() {
+        byte[] body = "{\"user\": {\"password\": \"123".getBytes(StandardCharsets.UTF_8);
+        RedactionPlan plan = RedactionPlan.compile(Arrays.asList("$..password"));
+
+        assertEquals(0, plan.apply(body, true, false).length);
+    }
+}
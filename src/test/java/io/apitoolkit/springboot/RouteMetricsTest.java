@@ -0,0 +1,67 @@
+package io.apitoolkit.springboot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+public class RouteMetricsTest {
+
+    @Test
+    public void testConcurrentRequestsAreCountedPerRouteMethodAndStatusClass() throws Exception {
+        RouteMetrics metrics = new RouteMetrics();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 1; i <= 1000; i++) {
+                    metrics.record("/users/{id}", "GET", i % 10 == 0 ? 503 : 200,
+                            TimeUnit.MICROSECONDS.toNanos(i * 10L));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        metrics.record(null, "BREW", 404, 1000);
+
+        RouteMetrics.Cell ok = metrics.cell("/users/{id}", "GET", 204);
+        RouteMetrics.Cell failed = metrics.cell("/users/{id}", "GET", 500);
+        assertEquals(7200, ok.count.sum());
+        assertEquals(800, failed.count.sum());
+        assertNull(metrics.cell("/users/{id}", "POST", 200));
+        assertNotNull(metrics.cell(null, "PROPFIND", 404));
+
+        // Uniform over 10us..10ms, less every tenth request.
+        long[] buckets = ok.cumulativeBuckets();
+        assertEquals(720, buckets[0]);
+        assertEquals(3600, buckets[2]);
+        assertEquals(7200, buckets[3]);
+        assertEquals(7200, buckets[buckets.length - 1]);
+    }
+
+    @Test
+    public void testBucketBoundsAreInclusiveAndRoutesAreCapped() {
+        RouteMetrics bounds = new RouteMetrics();
+        bounds.record("/", "GET", 200, TimeUnit.MICROSECONDS.toNanos(RouteMetrics.BUCKET_BOUNDS_MICROS[0]));
+        bounds.record("/", "GET", 200, TimeUnit.MICROSECONDS.toNanos(RouteMetrics.BUCKET_BOUNDS_MICROS[0] + 1));
+        bounds.record("/", "GET", 200, Long.MAX_VALUE);
+        long[] buckets = bounds.cell("/", "GET", 200).cumulativeBuckets();
+        assertEquals(RouteMetrics.BUCKET_BOUNDS_MICROS.length + 1, buckets.length);
+        assertEquals(1, buckets[0]);
+        assertEquals(2, buckets[1]);
+        assertEquals(2, buckets[buckets.length - 2]);
+        assertEquals(3, buckets[buckets.length - 1]);
+
+        RouteMetrics metrics = new RouteMetrics();
+        for (int i = 0; i < RouteMetrics.MAX_ROUTES + 10; i++) {
+            metrics.record("/route-" + i, "GET", 200, 1000);
+        }
+        assertEquals(10, metrics.cell(RouteMetrics.OTHER, "GET", 200).count.sum());
+    }
+}
@@ -0,0 +1,69 @@
+package io.apitoolkit.springboot;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class SdkMetricsTest {
+
+    @Test
+    public void testCaptureAndRedactionAreCounted() {
+        long captured = SdkMetrics.getBytesCaptured();
+        long truncated = SdkMetrics.getBytesTruncated();
+        long captures = SdkMetrics.getCount(SdkMetrics.Phase.CAPTURE);
+        long failures = SdkMetrics.getRedactionFailures();
+
+        CaptureBuffer buffer = new CaptureBuffer(10);
+        buffer.write(new byte[5], 0, 5);
+        buffer.write(new byte[20], 0, 20);
+        CapturedBody body = CapturedBody.from(buffer);
+        assertTrue(body.isTruncated());
+        assertEquals(10, SdkMetrics.getBytesCaptured() - captured);
+        assertEquals(15, SdkMetrics.getBytesTruncated() - truncated);
+        assertEquals(1, SdkMetrics.getCount(SdkMetrics.Phase.CAPTURE) - captures);
+
+        RedactionPlan plan = RedactionPlan.compile(Arrays.asList("$.password"), false);
+        byte[] malformed = "{\"password\": ".getBytes(StandardCharsets.UTF_8);
+        plan.apply(malformed, false);
+        assertEquals(1, SdkMetrics.getRedactionFailures() - failures);
+    }
+
+    @Test
+    public void testJmxViewReportsTheCounters() throws Exception {
+        SdkMetrics.registerJmx();
+        SdkMetrics.record(SdkMetrics.Phase.ENCODING, System.nanoTime() - 1000);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(SdkMetrics.OBJECT_NAME);
+        assertEquals(SdkMetrics.getTotalNanos(SdkMetrics.Phase.ENCODING),
+                server.getAttribute(name, "EncodingNanos"));
+        assertEquals(SdkMetrics.getBytesTruncated(), server.getAttribute(name, "BytesTruncated"));
+    }
+
+    @Test
+    public void testPhasesAreNotTimedWhenTimingIsOff() {
+        SdkMetrics.setTimingEnabled(false);
+        try {
+            long captures = SdkMetrics.getCount(SdkMetrics.Phase.CAPTURE);
+            long encodings = SdkMetrics.getCount(SdkMetrics.Phase.ENCODING);
+
+            assertEquals(0, SdkMetrics.start());
+            CaptureBuffer buffer = new CaptureBuffer(10);
+            buffer.write(new byte[5], 0, 5);
+            CapturedBody.from(buffer);
+            SdkMetrics.record(SdkMetrics.Phase.ENCODING, SdkMetrics.start());
+
+            assertEquals(captures, SdkMetrics.getCount(SdkMetrics.Phase.CAPTURE));
+            assertEquals(encodings, SdkMetrics.getCount(SdkMetrics.Phase.ENCODING));
+        } finally {
+            SdkMetrics.setTimingEnabled(true);
+        }
+    }
+}
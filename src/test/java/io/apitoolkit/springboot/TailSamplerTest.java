@@ -0,0 +1,41 @@
+package io.apitoolkit.springboot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TailSamplerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(2);
+
+    @Test
+    public void testErrorsAreAlwaysKept() {
+        TailSampler sampler = new TailSampler(0.0, 0);
+        List<Map<String, Object>> errors = new ArrayList<>();
+
+        assertFalse(sampler.keep("/users", 200, errors, FAST));
+        assertTrue(sampler.keep("/users", 503, errors, FAST));
+
+        errors.add(new HashMap<String, Object>());
+        assertTrue(sampler.keep("/users", 200, errors, FAST));
+    }
+
+    @Test
+    public void testSlowRequestsAboveRoutePercentileAreKept() {
+        TailSampler sampler = new TailSampler(0.0, 0.99);
+        for (int i = 0; i < 1024; i++) {
+            sampler.keep("/users", 200, null, FAST);
+        }
+
+        assertFalse(sampler.keep("/users", 200, null, FAST));
+        assertTrue(sampler.keep("/users", 200, null, TimeUnit.MILLISECONDS.toNanos(250)));
+        // Another route has no history yet, so nothing counts as slow there.
+        assertFalse(sampler.keep("/orders", 200, null, TimeUnit.MILLISECONDS.toNanos(250)));
+    }
+}
@@ -7,6 +7,8 @@ import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
@@ -101,4 +103,34 @@ public class UtilsTest {
 
         assertTrue(result.isEmpty());
     }
+
+    @Test
+    public void testLegacyConfigMapProducesSameStaticAttributes() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("serviceVersion", "1.2.0");
+        config.put("tags", "blue,canary");
+        config.put("redactHeaders", Arrays.asList("authorization"));
+        ExchangeConfig fromMap = ExchangeConfig.fromMap(config, "JavaSpringBoot");
+        ExchangeConfig built = ExchangeConfig.builder("JavaSpringBoot")
+                .serviceVersion("1.2.0")
+                .tags("blue,canary")
+                .redactHeaders(Arrays.asList("authorization"))
+                .build();
+
+        assertEquals(built.getStaticAttributes(), fromMap.getStaticAttributes());
+        assertEquals("\"blue,canary\"", built.getStaticAttributes().get(ExchangeConfig.TAGS));
+        assertEquals("[]", ExchangeConfig.fromMap(new HashMap<String, Object>(), "JavaApacheOutgoing")
+                .getStaticAttributes().get(ExchangeConfig.TAGS));
+    }
+
+    @Test
+    public void testLegacyConfigMapIsReadOncePerMap() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("redactHeaders", Arrays.asList("authorization"));
+
+        ExchangeConfig first = Utils.legacyConfig(config, "JavaSpringBoot");
+        assertSame(first, Utils.legacyConfig(config, "JavaSpringBoot"));
+        assertNotSame(first, Utils.legacyConfig(config, "JavaApacheOutgoing"));
+        assertNotSame(first, Utils.legacyConfig(new HashMap<>(config), "JavaSpringBoot"));
+    }
 }
@@ -0,0 +1,97 @@
+package io.apitoolkit.springboot.integrations;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.apitoolkit.springboot.SdkMetrics;
+
+public class ObserveRequestTest {
+
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/echo", exchange -> {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/echo";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testSharedClientIsReusedAcrossCalls() throws IOException {
+        try (ObserveRequest observeRequest = new ObserveRequest(Arrays.asList("authorization"),
+                Arrays.asList("$.password"), Arrays.asList("$.password"))) {
+            CloseableHttpClient client = observeRequest.getHttpClient();
+            assertSame(client, observeRequest.getHttpClient());
+
+            MockHttpServletRequest inbound = new MockHttpServletRequest("GET", "/users");
+            inbound.setAttribute("apitoolkit_message_id", "8b3e4a0a-6c1e-4b1e-9a55-0d0f0f0f0f0f");
+            for (int i = 0; i < 3; i++) {
+                HttpClientContext context = observeRequest.createContext(inbound, "/echo");
+                HttpPost post = new HttpPost(url);
+                post.setEntity(new StringEntity("{\"password\":\"secret\"}", ContentType.APPLICATION_JSON));
+                try (CloseableHttpResponse response = client.execute(post, context)) {
+                    assertEquals(200, response.getStatusLine().getStatusCode());
+                    assertEquals("{\"password\":\"secret\"}",
+                            EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSpanIsFinishedWhenTheResponseIsClosedOrAbortedUnread() throws IOException {
+        try (ObserveRequest observeRequest = new ObserveRequest()) {
+            CloseableHttpClient client = observeRequest.getHttpClient();
+
+            long finished = SdkMetrics.getCount(SdkMetrics.Phase.ATTRIBUTES);
+            HttpPost post = new HttpPost(url);
+            post.setEntity(new StringEntity("{\"id\":1}", ContentType.APPLICATION_JSON));
+            try (CloseableHttpResponse response = client.execute(post, observeRequest.createContext("/echo"))) {
+                assertEquals(200, response.getStatusLine().getStatusCode());
+            }
+            assertEquals(finished + 1, SdkMetrics.getCount(SdkMetrics.Phase.ATTRIBUTES));
+
+            HttpGet get = new HttpGet(url);
+            CloseableHttpResponse response = client.execute(get, observeRequest.createContext("/echo"));
+            get.abort();
+            assertEquals(finished + 2, SdkMetrics.getCount(SdkMetrics.Phase.ATTRIBUTES));
+            response.close();
+            assertEquals(finished + 2, SdkMetrics.getCount(SdkMetrics.Phase.ATTRIBUTES));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package io.apitoolkit.springboot.integrations;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.apitoolkit.springboot.CaptureBuffer;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.Okio;
+
+public class OkHttpInterceptorTest {
+
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/echo", exchange -> {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/echo";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testBodiesLargerThanCaptureLimitReachTheApplicationInFull() throws IOException {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new OkHttpInterceptor(Arrays.asList("authorization"),
+                        Arrays.asList("$.password"), Arrays.asList("$.password"), 8, false))
+                .build();
+        String json = "{\"password\":\"secret\",\"name\":\"a fairly long name\"}";
+        for (int i = 0; i < 3; i++) {
+            Request request = new Request.Builder()
+                    .url(url + "?page=" + i)
+                    .tag(OkHttpInterceptor.ObserveTag.class, OkHttpInterceptor.ObserveTag.of("/echo"))
+                    .post(RequestBody.create(json, MediaType.get("application/json")))
+                    .build();
+            try (Response response = client.newCall(request).execute()) {
+                assertEquals(200, response.code());
+                assertEquals(json, response.body().string());
+            }
+        }
+    }
+
+    @Test
+    public void testBodiesLargerThanThePeekCapReachTheApplicationInFull() throws IOException {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new OkHttpInterceptor(null, null, null, -1, false))
+                .build();
+        String json = "\"" + "a".repeat(OkHttpInterceptor.MAX_PEEK_BYTES) + "\"";
+        Request request = new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(json, MediaType.get("application/json")))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            assertEquals(200, response.code());
+            assertEquals(json, response.body().string());
+        }
+    }
+
+    @Test
+    public void testRequestBodyPastTheLimitIsCountedNotCopied() throws IOException {
+        CaptureBuffer capture = new CaptureBuffer(8);
+        BufferedSink sink = Okio.buffer(new OkHttpInterceptor.CaptureSink(capture));
+        RequestBody.create("a".repeat(100_000), MediaType.get("text/plain")).writeTo(sink);
+        sink.flush();
+
+        assertEquals("aaaaaaaa", new String(capture.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(100_000, capture.getTotalBytes());
+        assertTrue(capture.isTruncated());
+    }
+}
@@ -0,0 +1,85 @@
+package io.apitoolkit.springboot.integrations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.apitoolkit.springboot.CaptureBuffer;
+
+public class TeeHttpEntityTest {
+
+    @Test
+    public void testResponseIsCapturedWhileTheApplicationReadsIt() throws IOException {
+        byte[] body = "{\"items\": [1, 2, 3]}".getBytes(StandardCharsets.UTF_8);
+        CaptureBuffer capture = new CaptureBuffer(8);
+        AtomicInteger completions = new AtomicInteger();
+        TeeHttpEntity entity = new TeeHttpEntity(
+                new InputStreamEntity(new ByteArrayInputStream(body), body.length, ContentType.APPLICATION_JSON),
+                capture, completions::incrementAndGet);
+
+        assertEquals(0, completions.get());
+        try (InputStream content = entity.getContent()) {
+            assertArrayEquals(body, content.readAllBytes());
+        }
+
+        assertEquals(1, completions.get());
+        assertEquals("{\"items\"", new String(capture.toByteArray(), StandardCharsets.UTF_8));
+        assertTrue(capture.isTruncated());
+    }
+
+    @Test
+    public void testRequestIsCapturedWhenWritten() throws IOException {
+        CaptureBuffer capture = new CaptureBuffer(-1);
+        TeeHttpEntity entity = new TeeHttpEntity(new StringEntity("hello", ContentType.TEXT_PLAIN), capture, null);
+
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        entity.writeTo(wire);
+        entity.writeTo(wire);
+
+        assertEquals("hellohello", wire.toString(StandardCharsets.UTF_8.name()));
+        assertEquals("hello", new String(capture.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals("hello", EntityUtils.toString(entity));
+    }
+
+    @Test
+    public void testRepeatableEntityReadTwiceIsCapturedOnce() throws IOException {
+        CaptureBuffer capture = new CaptureBuffer(-1);
+        TeeHttpEntity entity = new TeeHttpEntity(new StringEntity("hello", ContentType.TEXT_PLAIN), capture, null);
+
+        assertEquals("hello", EntityUtils.toString(entity));
+        assertEquals("hello", EntityUtils.toString(entity));
+
+        assertEquals("hello", new String(capture.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testStreamedEntityIsWrappedOnce() throws IOException {
+        byte[] body = "streamed".getBytes(StandardCharsets.UTF_8);
+        CaptureBuffer capture = new CaptureBuffer(-1);
+        TeeHttpEntity entity = new TeeHttpEntity(
+                new InputStreamEntity(new ByteArrayInputStream(body), body.length, ContentType.TEXT_PLAIN),
+                capture, null);
+
+        InputStream first = entity.getContent();
+        assertEquals('s', first.read());
+        InputStream second = entity.getContent();
+        assertEquals("treamed", new String(second.readAllBytes(), StandardCharsets.UTF_8));
+
+        assertSame(first, second);
+        assertEquals("streamed", new String(capture.toByteArray(), StandardCharsets.UTF_8));
+    }
+}